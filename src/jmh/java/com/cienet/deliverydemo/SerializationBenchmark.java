@@ -0,0 +1,113 @@
+package com.cienet.deliverydemo;
+
+import com.cienet.deliverydemo.order.OrderState;
+import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.SerializationAPIKt;
+import net.corda.core.serialization.SerializationContext;
+import net.corda.core.serialization.SerializationDefaults;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.core.serialization.SerializedBytes;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize and deserialize round-trips of TokenStates, OrderStates and a SignedTransaction with 1, 10
+ * and 100 states, with AMQP as used on the wire and Kryo as used for checkpoints. The mock network
+ * provides the serialization environment and the node that signs the transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"1", "10", "100"})
+    public int states;
+
+    private MockNetwork network;
+    private SerializationFactory factory;
+    private SerializationContext amqp;
+    private SerializationContext kryo;
+
+    private List<TokenState> tokenStates;
+    private List<OrderState> orderStates;
+    private SignedTransaction signedTransaction;
+
+    @Setup
+    public void setup() {
+        network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"));
+        StartedMockNode node = network.createPartyNode(null);
+        network.runNetwork();
+        Party me = node.getInfo().getLegalIdentities().get(0);
+        Party notary = network.getDefaultNotaryIdentity();
+
+        factory = SerializationFactory.Companion.getDefaultFactory();
+        amqp = SerializationDefaults.INSTANCE.getP2P_CONTEXT();
+        kryo = SerializationDefaults.INSTANCE.getCHECKPOINT_CONTEXT();
+
+        tokenStates = new ArrayList<>();
+        orderStates = new ArrayList<>();
+        TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
+        for (int i = 0; i < states; i++) {
+            TokenState tokenState = new TokenState(me, me, 100 + i);
+            tokenStates.add(tokenState);
+            orderStates.add(new OrderState("This is a benchmark order.", me, me,
+                    new UniqueIdentifier("order_" + i), 1290, 1000, "shipping"));
+            transactionBuilder.addOutputState(tokenState, TokenContract.ID, notary);
+        }
+        transactionBuilder.addCommand(new TokenContract.Issue(), me.getOwningKey());
+        signedTransaction = node.transaction(() -> node.getServices().signInitialTransaction(transactionBuilder));
+    }
+
+    @TearDown
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    private <T> T roundTrip(T value, Class<T> type, SerializationContext context) {
+        SerializedBytes<T> bytes = SerializationAPIKt.serialize(value, factory, context);
+        return factory.deserialize(bytes, type, context);
+    }
+
+    @Benchmark
+    public Object tokenStatesAmqp() {
+        return roundTrip(tokenStates, List.class, amqp);
+    }
+
+    @Benchmark
+    public Object tokenStatesKryo() {
+        return roundTrip(tokenStates, List.class, kryo);
+    }
+
+    @Benchmark
+    public Object orderStatesAmqp() {
+        return roundTrip(orderStates, List.class, amqp);
+    }
+
+    @Benchmark
+    public Object orderStatesKryo() {
+        return roundTrip(orderStates, List.class, kryo);
+    }
+
+    @Benchmark
+    public Object signedTransactionAmqp() {
+        return roundTrip(signedTransaction, SignedTransaction.class, amqp);
+    }
+
+    @Benchmark
+    public Object signedTransactionKryo() {
+        return roundTrip(signedTransaction, SignedTransaction.class, kryo);
+    }
+}
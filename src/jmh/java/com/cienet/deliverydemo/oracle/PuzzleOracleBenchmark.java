@@ -0,0 +1,54 @@
+package com.cienet.deliverydemo.oracle;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PuzzleOracle.query throughput, the way concurrent QueryHandler flows call it. `hit` repeats a few
+ * queries answered from the cache, `miss` never repeats one. Compare thread counts with JMH's -t, e.g.
+ * -PjmhArgs="PuzzleOracleBenchmark -t 8"; with no lock in the oracle, throughput should grow with the
+ * threads up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PuzzleOracleBenchmark {
+    private static final int HOT_QUERIES = 1024;
+
+    @Param({"hit", "miss"})
+    public String cache;
+
+    private MockNetwork network;
+    private Oracle.PuzzleOracle oracle;
+
+    @State(Scope.Thread)
+    public static class Queries {
+        private int next = (int) Thread.currentThread().getId() << 24;
+    }
+
+    @Setup
+    public void setup() {
+        network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"));
+        StartedMockNode node = network.createPartyNode(null);
+        network.runNetwork();
+        oracle = node.getServices().cordaService(Oracle.PuzzleOracle.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Benchmark
+    public int query(Queries queries) {
+        int of = queries.next++;
+        return oracle.query("hit".equals(cache) ? of % HOT_QUERIES : of);
+    }
+}
@@ -0,0 +1,110 @@
+package com.cienet.deliverydemo.order;
+
+import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenState;
+import net.corda.core.contracts.*;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.testing.core.TestIdentity;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of OrderContract.verify for placing and for delivering 1, 10 and 100 orders in one
+ * transaction, each order paid for out of a single buyer TokenState.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderContractBenchmark {
+    private static final long SELLING_PRICE = 1000;
+    private static final int DOWN_PAYMENTS = 1000;
+
+    private final Party issuer = new TestIdentity(new CordaX500Name("Issuer", "London", "GB")).getParty();
+    private final Party buyer = new TestIdentity(new CordaX500Name("Buyer", "London", "GB")).getParty();
+    private final Party seller = new TestIdentity(new CordaX500Name("Seller", "New York", "US")).getParty();
+    private final Party notary = new TestIdentity(new CordaX500Name("Notary", "London", "GB")).getParty();
+
+    @Param({"1", "10", "100"})
+    public int orders;
+
+    private final OrderContract contract = new OrderContract();
+    private LedgerTransaction placement;
+    private LedgerTransaction delivery;
+
+    @Setup
+    public void setup() {
+        List<OrderState> shipping = new ArrayList<>();
+        List<OrderState> delivered = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            UniqueIdentifier linearId = new UniqueIdentifier("order_" + i);
+            shipping.add(new OrderState("This is a benchmark order.", buyer, seller, linearId,
+                    SELLING_PRICE, DOWN_PAYMENTS, OrderContract.SHIPPING));
+            delivered.add(new OrderState("This is a benchmark order.", buyer, seller, linearId,
+                    SELLING_PRICE, DOWN_PAYMENTS, OrderContract.DELIVERED));
+        }
+        long deposits = orders * shipping.get(0).getDeposit();
+        long balancePayments = orders * shipping.get(0).getBalancePayment();
+
+        List<StateAndRef<ContractState>> placementInputs = new ArrayList<>();
+        placementInputs.add(stateAndRef(new TokenState(issuer, buyer, deposits), TokenContract.ID));
+        List<TransactionState<ContractState>> placementOutputs = new ArrayList<>();
+        shipping.forEach(orderState -> placementOutputs.add(transactionState(orderState, OrderContract.CONTRACT_ID)));
+        placementOutputs.add(transactionState(new TokenState(issuer, seller, deposits), TokenContract.ID));
+        placement = ledgerTransaction(placementInputs, placementOutputs,
+                new OrderContract.Commands.OrderPlacingCommand());
+
+        List<StateAndRef<ContractState>> deliveryInputs = new ArrayList<>();
+        shipping.forEach(orderState -> deliveryInputs.add(stateAndRef(orderState, OrderContract.CONTRACT_ID)));
+        deliveryInputs.add(stateAndRef(new TokenState(issuer, buyer, balancePayments), TokenContract.ID));
+        List<TransactionState<ContractState>> deliveryOutputs = new ArrayList<>();
+        delivered.forEach(orderState -> deliveryOutputs.add(transactionState(orderState, OrderContract.CONTRACT_ID)));
+        deliveryOutputs.add(transactionState(new TokenState(issuer, seller, balancePayments), TokenContract.ID));
+        delivery = ledgerTransaction(deliveryInputs, deliveryOutputs,
+                new OrderContract.Commands.OrderDeliveredCommand());
+    }
+
+    private TransactionState<ContractState> transactionState(ContractState state, String contract) {
+        return new TransactionState<>(state, contract, notary);
+    }
+
+    private StateAndRef<ContractState> stateAndRef(ContractState state, String contract) {
+        return new StateAndRef<>(transactionState(state, contract), new StateRef(SecureHash.randomSHA256(), 0));
+    }
+
+    private LedgerTransaction ledgerTransaction(List<StateAndRef<ContractState>> inputs,
+                                                List<TransactionState<ContractState>> outputs,
+                                                CommandData orderCommand) {
+        List<PublicKey> signers = new ArrayList<>();
+        signers.add(issuer.getOwningKey());
+        signers.add(buyer.getOwningKey());
+        signers.add(seller.getOwningKey());
+        List<CommandWithParties<CommandData>> commands = new ArrayList<>();
+        commands.add(new CommandWithParties<>(signers, Collections.emptyList(), new TokenContract.Pay()));
+        commands.add(new CommandWithParties<>(signers, Collections.emptyList(), orderCommand));
+        return new LedgerTransaction(inputs, outputs, commands, Collections.emptyList(),
+                SecureHash.randomSHA256(), notary, null, new PrivacySalt());
+    }
+
+    @Benchmark
+    public LedgerTransaction verifyPlacement() {
+        contract.verify(placement);
+        return placement;
+    }
+
+    @Benchmark
+    public LedgerTransaction verifyDelivery() {
+        contract.verify(delivery);
+        return delivery;
+    }
+}
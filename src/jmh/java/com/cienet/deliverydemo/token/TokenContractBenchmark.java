@@ -0,0 +1,65 @@
+package com.cienet.deliverydemo.token;
+
+import net.corda.core.contracts.*;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.testing.core.TestIdentity;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of TokenContract.verify for Pay transactions of 1, 10 and 100 input states, each paying
+ * one output to a new owner, the shape the order flows build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenContractBenchmark {
+    private final Party issuer = new TestIdentity(new CordaX500Name("Issuer", "London", "GB")).getParty();
+    private final Party buyer = new TestIdentity(new CordaX500Name("Buyer", "London", "GB")).getParty();
+    private final Party seller = new TestIdentity(new CordaX500Name("Seller", "New York", "US")).getParty();
+    private final Party notary = new TestIdentity(new CordaX500Name("Notary", "London", "GB")).getParty();
+
+    @Param({"1", "10", "100"})
+    public int states;
+
+    private final TokenContract contract = new TokenContract();
+    private LedgerTransaction payment;
+
+    @Setup
+    public void setup() {
+        List<StateAndRef<ContractState>> inputs = new ArrayList<>();
+        for (int i = 0; i < states; i++) {
+            TransactionState<ContractState> input =
+                    new TransactionState<>(new TokenState(issuer, buyer, 10), TokenContract.ID, notary);
+            inputs.add(new StateAndRef<>(input, new StateRef(SecureHash.randomSHA256(), 0)));
+        }
+        List<TransactionState<ContractState>> outputs = Collections.singletonList(
+                new TransactionState<>(new TokenState(issuer, seller, 10 * states), TokenContract.ID, notary));
+        List<PublicKey> signers = new ArrayList<>();
+        signers.add(issuer.getOwningKey());
+        signers.add(buyer.getOwningKey());
+        signers.add(seller.getOwningKey());
+        List<CommandWithParties<CommandData>> commands = Collections.singletonList(
+                new CommandWithParties<>(signers, Collections.emptyList(), new TokenContract.Pay()));
+
+        payment = new LedgerTransaction(inputs, outputs, commands, Collections.emptyList(),
+                SecureHash.randomSHA256(), notary, null, new PrivacySalt());
+    }
+
+    @Benchmark
+    public LedgerTransaction verifyPay() {
+        contract.verify(payment);
+        return payment;
+    }
+}
@@ -0,0 +1,247 @@
+package com.cienet.deliverydemo.load;
+
+import com.cienet.deliverydemo.order.OrderDeliveredFlow;
+import com.cienet.deliverydemo.order.OrderPlaceFlow;
+import com.cienet.deliverydemo.token.IssuanceOracleMode;
+import com.cienet.deliverydemo.token.TokenIssueFlow;
+import com.google.common.collect.ImmutableList;
+import kotlin.Pair;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.Party;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Subscription;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Load harness on a mock network with a thread per node: a bank issues to a buyer, the buyer places
+ * orders with a seller and the seller delivers them, in a configurable mix at a fixed concurrency.
+ * Logs flows/sec and p50/p99/p999 latency per flow and per ProgressTracker step, and writes the same
+ * report to the file named by deliverydemo.load.report. Run with ./gradlew loadTest, not part of test.
+ *
+ * Configured with the system properties deliverydemo.load.flows (default 200),
+ * deliverydemo.load.concurrency (4) and deliverydemo.load.mix (issue=1,place=2,deliver=1).
+ */
+public class FlowLoadTest {
+    private static final int FLOWS = Integer.getInteger("deliverydemo.load.flows", 200);
+    private static final int CONCURRENCY = Integer.getInteger("deliverydemo.load.concurrency", 4);
+    private static final String MIX = System.getProperty("deliverydemo.load.mix", "issue=1,place=2,deliver=1");
+    private static final String REPORT = System.getProperty("deliverydemo.load.report");
+    private static final long TOKENS_PER_STATE = 1_000_000;
+    private static final Logger logger = LoggerFactory.getLogger(FlowLoadTest.class);
+
+    private enum Kind { ISSUE, PLACE, DELIVER }
+
+    private MockNetwork network;
+    private StartedMockNode bank;
+    private StartedMockNode buyer;
+    private StartedMockNode seller;
+
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> errors = new ConcurrentHashMap<>();
+    private final Queue<String> placedOrders = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextOrder = new AtomicInteger();
+
+    @Before
+    public void setup() throws Exception {
+        System.setProperty(IssuanceOracleMode.PROPERTY, IssuanceOracleMode.SKIP.name());
+        System.setProperty(OrderDeliveredFlow.ORACLE_MODE, "SKIP");
+        network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"),
+                new MockNetworkParameters().setThreadPerNode(true).setNetworkSendManuallyPumped(false));
+        bank = network.createPartyNode(null);
+        buyer = network.createPartyNode(null);
+        seller = network.createPartyNode(null);
+
+        // Enough separate states that concurrent placements never wait on each other's coins.
+        List<Pair<Party, Long>> funding = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY * 4; i++) {
+            funding.add(new Pair<>(party(buyer), TOKENS_PER_STATE));
+        }
+        bank.startFlow(new TokenIssueFlow.BatchRequest(funding)).get();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+        System.clearProperty(IssuanceOracleMode.PROPERTY);
+        System.clearProperty(OrderDeliveredFlow.ORACLE_MODE);
+    }
+
+    @Test
+    public void flowMixThroughputAndLatency() throws Exception {
+        List<Kind> cycle = parseMix(MIX);
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(CONCURRENCY);
+        List<Future<?>> results = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int worker = 0; worker < CONCURRENCY; worker++) {
+            results.add(workers.submit(() -> {
+                for (int i = next.getAndIncrement(); i < FLOWS; i = next.getAndIncrement()) {
+                    run(cycle.get(i % cycle.size()));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        workers.shutdown();
+
+        report(elapsed);
+        int failed = errors.values().stream().mapToInt(AtomicInteger::get).sum();
+        assertEquals(0, failed);
+    }
+
+    private void run(Kind kind) {
+        String orderID = null;
+        StartedMockNode node;
+        FlowLogic<?> flow;
+        if (kind == Kind.DELIVER) {
+            orderID = placedOrders.poll();
+            // Nothing to deliver yet, place an order instead.
+            kind = orderID == null ? Kind.PLACE : Kind.DELIVER;
+        }
+        switch (kind) {
+            case ISSUE:
+                node = bank;
+                flow = new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(party(buyer), TOKENS_PER_STATE)));
+                break;
+            case PLACE:
+                node = buyer;
+                orderID = "load_" + nextOrder.getAndIncrement();
+                flow = new OrderPlaceFlow.Request(party(seller), orderID, new BigDecimal("12.90"), new BigDecimal("0.1"));
+                break;
+            default:
+                node = seller;
+                flow = new OrderDeliveredFlow.Request(orderID);
+        }
+
+        String name = flow.getClass().getName().substring(flow.getClass().getPackage().getName().length() + 1);
+        StepTimer stepTimer = new StepTimer(name, flow.getProgressTracker());
+        long start = System.nanoTime();
+        try {
+            node.startFlow(flow).get();
+            record(name, System.nanoTime() - start);
+            stepTimer.finish();
+            if (kind == Kind.PLACE) {
+                placedOrders.add(orderID);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            errors.computeIfAbsent(name, it -> new AtomicInteger()).incrementAndGet();
+            stepTimer.cancel();
+        }
+    }
+
+    private void record(String key, long nanos) {
+        latencies.computeIfAbsent(key, it -> Collections.synchronizedList(new ArrayList<>())).add(nanos);
+    }
+
+    // Times each top-level step of a flow, from the change to it until the change to the next one.
+    private class StepTimer {
+        private final String flowName;
+        private final Subscription subscription;
+        private String step;
+        private long stepStart;
+
+        StepTimer(String flowName, ProgressTracker progressTracker) {
+            this.flowName = flowName;
+            this.subscription = progressTracker.getChanges()
+                    .filter(change -> change instanceof ProgressTracker.Change.Position
+                            && change.getProgressTracker() == progressTracker)
+                    .subscribe(change -> stepChanged(((ProgressTracker.Change.Position) change).getNewStep()));
+        }
+
+        private synchronized void stepChanged(ProgressTracker.Step newStep) {
+            long now = System.nanoTime();
+            if (step != null) {
+                record(flowName + " / " + step, now - stepStart);
+            }
+            boolean finished = newStep == ProgressTracker.DONE.INSTANCE || newStep == ProgressTracker.UNSTARTED.INSTANCE;
+            step = finished ? null : newStep.getLabel();
+            stepStart = now;
+        }
+
+        void finish() {
+            stepChanged(ProgressTracker.DONE.INSTANCE);
+            subscription.unsubscribe();
+        }
+
+        void cancel() {
+            subscription.unsubscribe();
+        }
+    }
+
+    private void report(long elapsedNanos) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        int total = latencies.entrySet().stream()
+                .filter(entry -> !entry.getKey().contains(" / "))
+                .mapToInt(entry -> entry.getValue().size())
+                .sum();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%d flows in %.2fs at concurrency %d, %.1f flows/sec, mix %s",
+                total, seconds, CONCURRENCY, total / seconds, MIX));
+        lines.add(String.format("%-90s %6s %9s %9s %9s %9s", "", "count", "per sec", "p50 ms", "p99 ms", "p999 ms"));
+        new TreeMap<>(latencies).forEach((key, values) -> {
+            long[] sorted;
+            synchronized (values) {
+                sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            lines.add(String.format("%-90s %6d %9.1f %9.2f %9.2f %9.2f",
+                    key, sorted.length, sorted.length / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999)));
+        });
+        errors.forEach((key, count) -> lines.add(key + " failed " + count.get() + " times"));
+
+        logger.info("Flow load report:\n{}", String.join("\n", lines));
+        if (REPORT != null) {
+            Path report = Paths.get(REPORT);
+            Files.createDirectories(report.toAbsolutePath().getParent());
+            Files.write(report, lines, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static List<Kind> parseMix(String mix) {
+        List<Kind> cycle = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] kindAndWeight = entry.split("=");
+            Kind kind = Kind.valueOf(kindAndWeight[0].trim().toUpperCase());
+            int weight = kindAndWeight.length > 1 ? Integer.parseInt(kindAndWeight[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                cycle.add(kind);
+            }
+        }
+        if (cycle.isEmpty()) {
+            throw new IllegalArgumentException("Empty flow mix: " + mix);
+        }
+        return cycle;
+    }
+
+    private static Party party(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+}
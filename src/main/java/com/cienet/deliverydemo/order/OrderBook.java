@@ -0,0 +1,147 @@
+package com.cienet.deliverydemo.order;
+
+import com.cienet.deliverydemo.token.VaultScan;
+import com.google.common.collect.Lists;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * The unconsumed orders this node sells, by external id, so the delivery flows resolve an order id
+ * without a vault query.
+ *
+ * The book follows the vault's update feed and holds at most
+ * deliverydemo.order.book.maxEntries orders (default 10000), dropping the least recently used.
+ * A miss is read from the vault and kept. When several of our orders share an external id, the
+ * most recently recorded one is the order for that id.
+ */
+@CordaService
+public class OrderBook extends SingletonSerializeAsToken {
+    static final String MAX_ENTRIES = "deliverydemo.order.book.maxEntries";
+    // Ids per IN clause of a lookup.
+    private static final int LOOKUP_BATCH_SIZE = 200;
+
+    private final AppServiceHub services;
+    private final Map<String, StateAndRef<OrderState>> orders;
+    // Bumped on every consumed order, so a vault read that raced a consumption is not kept.
+    private long consumptions;
+
+    public OrderBook(AppServiceHub services) {
+        this.services = services;
+        int maxEntries = Integer.getInteger(MAX_ENTRIES, 10_000);
+        this.orders = new LinkedHashMap<String, StateAndRef<OrderState>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StateAndRef<OrderState>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        services.getVaultService().getUpdates().subscribe(this::apply);
+    }
+
+    /** Our unconsumed order with this external id, or null if there is none. */
+    public StateAndRef<OrderState> find(String externalId) {
+        StateAndRef<OrderState> cached = get(externalId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long seen = consumptions();
+        Vault.Page<OrderState> results = services.getVaultService().queryBy(
+                OrderState.class,
+                OrderQueries.byExternalIdAndSeller(externalId, me()),
+                new PageSpecification(DEFAULT_PAGE_NUM, 1),
+                OrderQueries.LATEST_FIRST);
+        if (results.getStates().isEmpty()) {
+            return null;
+        }
+        StateAndRef<OrderState> found = results.getStates().get(0);
+        keep(found, seen);
+        return found;
+    }
+
+    /** Our unconsumed orders with these external ids, by id. Ids without an order are left out. */
+    public Map<String, StateAndRef<OrderState>> findAll(Collection<String> externalIds) {
+        Map<String, StateAndRef<OrderState>> found = new LinkedHashMap<>();
+        List<String> missed = new ArrayList<>();
+        for (String externalId : externalIds) {
+            StateAndRef<OrderState> cached = get(externalId);
+            if (cached != null) {
+                found.put(externalId, cached);
+            } else {
+                missed.add(externalId);
+            }
+        }
+
+        long seen = consumptions();
+        for (List<String> lookup : Lists.partition(missed, LOOKUP_BATCH_SIZE)) {
+            // Every page is read, as orders sharing an id may outnumber the ids; the latest comes first.
+            for (StateAndRef<OrderState> orderStateRef : VaultScan.scan(services, OrderState.class,
+                    OrderQueries.byExternalIdsAndSeller(lookup, me()),
+                    OrderQueries.LATEST_FIRST, VaultScan.DEFAULT_PAGE_SIZE)) {
+                if (found.putIfAbsent(orderStateRef.getState().getData().getLinearId().getExternalId(), orderStateRef) == null) {
+                    keep(orderStateRef, seen);
+                }
+            }
+        }
+        return found;
+    }
+
+    private Party me() {
+        return services.getMyInfo().getLegalIdentities().get(0);
+    }
+
+    private synchronized StateAndRef<OrderState> get(String externalId) {
+        return orders.get(externalId);
+    }
+
+    private synchronized long consumptions() {
+        return consumptions;
+    }
+
+    private synchronized void keep(StateAndRef<OrderState> orderStateRef, long seen) {
+        if (consumptions == seen) {
+            orders.putIfAbsent(orderStateRef.getState().getData().getLinearId().getExternalId(), orderStateRef);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void apply(Vault.Update<ContractState> update) {
+        for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+            if (consumed.getState().getData() instanceof OrderState) {
+                OrderState orderState = (OrderState) consumed.getState().getData();
+                StateAndRef<OrderState> cached = orders.get(orderState.getLinearId().getExternalId());
+                if (cached != null && cached.getRef().equals(consumed.getRef())) {
+                    orders.remove(orderState.getLinearId().getExternalId());
+                }
+                consumptions++;
+            }
+        }
+        for (StateAndRef<ContractState> produced : update.getProduced()) {
+            if (produced.getState().getData() instanceof OrderState) {
+                OrderState orderState = (OrderState) produced.getState().getData();
+                if (orderState.getSeller().equals(me())) {
+                    String externalId = orderState.getLinearId().getExternalId();
+                    StateAndRef<OrderState> cached = orders.get(externalId);
+                    // A newly recorded order is the latest for its id, within a transaction the last output is.
+                    if (cached == null || !cached.getRef().getTxhash().equals(produced.getRef().getTxhash())
+                            || cached.getRef().getIndex() < produced.getRef().getIndex()) {
+                        orders.put(externalId, (StateAndRef<OrderState>) (StateAndRef<?>) produced);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.cienet.deliverydemo.order;
 
+import com.cienet.deliverydemo.token.Money;
 import com.cienet.deliverydemo.token.TokenState;
 import net.corda.core.contracts.*;
+import net.corda.core.identity.Party;
 import net.corda.core.transactions.LedgerTransaction;
 
 import java.security.PublicKey;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
@@ -13,6 +18,9 @@ public class OrderContract implements Contract {
     // Used to reference the contract in transactions.
     static final String CONTRACT_ID = "com.cienet.deliverydemo.order.OrderContract";
 
+    static final String SHIPPING = "shipping";
+    static final String DELIVERED = "delivered";
+
     public interface Commands extends CommandData {
 
         class OrderPlacingCommand extends TypeOnlyCommandData implements Commands {
@@ -41,43 +49,104 @@ public class OrderContract implements Contract {
                     orderPlacingCommand.size() + orderDeliveredCommand.size() == 1);
 
             orderPlacingCommand.forEach( commandWithData -> {
-                //input
-
-                final List<TokenState> iTokenStateList = tx.inputsOfType(TokenState.class);
-                require.using("Must have a input TokenState", iTokenStateList.size() == 1);
-                //TokenState iTokenState = iTokenStateList.get(0);
-
-                final List<OrderState> iOrderStateList = tx.inputsOfType(OrderState.class);
-                require.using("Must have a input OrderState", iOrderStateList.size() == 1);
-                OrderState iOrderState = iOrderStateList.get(0);
-
-                //output
-
-                final List<TokenState> oTokenStateList = tx.outputsOfType(TokenState.class);
-                require.using("Must have a output TokenState",
-                        oTokenStateList.size() == 1 || oTokenStateList.size() == 2);
-                //TokenState oTokenState = oTokenStateList.get(0);
-
-                final List<OrderState> oOrderStateList = tx.outputsOfType(OrderState.class);
-                require.using("Must have a output OrderState", oOrderStateList.size() == 1);
-                OrderState oOrderState = oOrderStateList.get(0);
-
-                //TODO
-                //amount in Token: amount > sellingPrice, amount = 10% sellingPrice + balance
-
+                // Any number of orders can be placed at once, each paying its down payment to its
+                // seller out of the buyer's tokens.
                 final List<PublicKey> commandWithDataSigners = commandWithData.getSigners();
-                require.using("The input OrderState's party is a required signer",
-                    commandWithDataSigners.contains(iOrderState.getBuyer().getOwningKey()));
-                require.using("The output OrderState's party is a required signer",
-                        commandWithDataSigners.contains(oOrderState.getBuyer().getOwningKey()));
+                require.using("Must have a input TokenState", !tx.inputsOfType(TokenState.class).isEmpty());
+                require.using("Must not have a input OrderState", tx.inputsOfType(OrderState.class).isEmpty());
 
+                final List<OrderState> oOrderStateList = tx.outputsOfType(OrderState.class);
+                require.using("Must have a output OrderState", !oOrderStateList.isEmpty());
+
+                final Map<Party, Long> expectedTokenFlow = new HashMap<>();
+                for (OrderState oOrderState : oOrderStateList) {
+                    require.using("The state of output OrderState must be shipping.",
+                            oOrderState.getState().equals(SHIPPING));
+                    require.using("The selling price must be positive", oOrderState.getSellingPrice() > 0);
+                    require.using("The down payments must be between 0 and " + Money.BASIS_POINTS + " basis points",
+                            oOrderState.getDownPayments() >= 0 && oOrderState.getDownPayments() <= Money.BASIS_POINTS);
+                    require.using("The buyer and the seller are required signers",
+                            commandWithDataSigners.contains(oOrderState.getBuyer().getOwningKey())
+                                    && commandWithDataSigners.contains(oOrderState.getSeller().getOwningKey()));
+
+                    long deposit = oOrderState.getDeposit();
+                    expectedTokenFlow.merge(oOrderState.getSeller(), deposit, Math::addExact);
+                    expectedTokenFlow.merge(oOrderState.getBuyer(), -deposit, Math::addExact);
+                }
+
+                require.using("The down payment of every placed OrderState must be paid",
+                        tokenFlow(tx).equals(withoutZeros(expectedTokenFlow)));
             });
 
             orderDeliveredCommand.forEach( commandWithData -> {
-                //TODO
+                // Any number of orders can be settled at once. Every input order is matched to its
+                // output by linear id, and each order adds its balance payment to what its seller is
+                // owed and its buyer owes, all in one pass over the states.
+                final List<PublicKey> commandWithDataSigners = commandWithData.getSigners();
+                final Map<UniqueIdentifier, OrderState> shippingOrders = new HashMap<>();
+                for (StateAndRef<ContractState> input : tx.getInputs()) {
+                    ContractState state = input.getState().getData();
+                    if (state instanceof OrderState) {
+                        OrderState iOrderState = (OrderState) state;
+                        require.using("The state of input OrderState must be shipping.",
+                                iOrderState.getState().equals(SHIPPING));
+                        require.using("Must not have a duplicate input OrderState",
+                                shippingOrders.put(iOrderState.getLinearId(), iOrderState) == null);
+                    }
+                }
+                require.using("Must have a input OrderState", !shippingOrders.isEmpty());
+
+                final Map<Party, Long> expectedTokenFlow = new HashMap<>();
+                int deliveredCount = 0;
+                for (TransactionState<ContractState> output : tx.getOutputs()) {
+                    ContractState state = output.getData();
+                    if (state instanceof OrderState) {
+                        OrderState oOrderState = (OrderState) state;
+                        OrderState iOrderState = shippingOrders.get(oOrderState.getLinearId());
+                        require.using("Every output OrderState must have its input OrderState", iOrderState != null);
+                        require.using("The state of output OrderState must be delivered.",
+                                oOrderState.getState().equals(DELIVERED));
+                        require.using("Only the state of OrderState may change on delivery",
+                                oOrderState.getBuyer().equals(iOrderState.getBuyer())
+                                        && oOrderState.getSeller().equals(iOrderState.getSeller())
+                                        && oOrderState.getSellingPrice() == iOrderState.getSellingPrice()
+                                        && oOrderState.getDownPayments() == iOrderState.getDownPayments()
+                                        && Objects.equals(oOrderState.getData(), iOrderState.getData()));
+                        require.using("The buyer and the seller are required signers",
+                                commandWithDataSigners.contains(oOrderState.getBuyer().getOwningKey())
+                                        && commandWithDataSigners.contains(oOrderState.getSeller().getOwningKey()));
+
+                        long balancePayment = oOrderState.getBalancePayment();
+                        expectedTokenFlow.merge(oOrderState.getSeller(), balancePayment, Math::addExact);
+                        expectedTokenFlow.merge(oOrderState.getBuyer(), -balancePayment, Math::addExact);
+                        deliveredCount++;
+                    }
+                }
+                require.using("Every input OrderState must be delivered", deliveredCount == shippingOrders.size());
+
+                require.using("The balance payment of every delivered OrderState must be paid",
+                        tokenFlow(tx).equals(withoutZeros(expectedTokenFlow)));
             });
 
             return null;
         });
     }
-}
\ No newline at end of file
+
+    // Each party's tokens must change by exactly what it is owed or owes. TokenContract already checks
+    // the tokens themselves are conserved.
+    private static Map<Party, Long> tokenFlow(LedgerTransaction tx) {
+        final Map<Party, Long> tokenFlow = new HashMap<>();
+        for (TokenState iTokenState : tx.inputsOfType(TokenState.class)) {
+            tokenFlow.merge(iTokenState.getOwner(), -iTokenState.getAmount(), Math::addExact);
+        }
+        for (TokenState oTokenState : tx.outputsOfType(TokenState.class)) {
+            tokenFlow.merge(oTokenState.getOwner(), oTokenState.getAmount(), Math::addExact);
+        }
+        return withoutZeros(tokenFlow);
+    }
+
+    private static Map<Party, Long> withoutZeros(Map<Party, Long> tokenFlow) {
+        tokenFlow.values().removeIf(amount -> amount == 0);
+        return tokenFlow;
+    }
+}
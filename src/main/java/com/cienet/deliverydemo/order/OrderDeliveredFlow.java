@@ -1,19 +1,30 @@
 package com.cienet.deliverydemo.order;
 
 import co.paralleluniverse.fibers.Suspendable;
+import com.cienet.deliverydemo.oracle.Oracle;
+import com.cienet.deliverydemo.oracle.OracleFlow;
 import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenPaySignFlow;
+import com.cienet.deliverydemo.token.TokenSelection;
 import com.cienet.deliverydemo.token.TokenState;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import net.corda.core.contracts.*;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.transactions.FilteredTransaction;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
@@ -29,12 +40,7 @@ public class OrderDeliveredFlow {
         private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
         private final ProgressTracker.Step VERIFYING_TRANSACTION = new ProgressTracker.Step("Verifying contract constraints.");
         private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
-        private final ProgressTracker.Step GATHERING_SIGS = new ProgressTracker.Step("Gathering the counterparty's signature.") {
-            @Override
-            public ProgressTracker childProgressTracker() {
-                return CollectSignaturesFlow.Companion.tracker();
-            }
-        };
+        private final ProgressTracker.Step GATHERING_SIGS = new ProgressTracker.Step("Gathering the counterparties' signatures.");
         private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.") {
             @Override
             public ProgressTracker childProgressTracker() {
@@ -68,26 +74,13 @@ public class OrderDeliveredFlow {
             Party me = getServiceHub().getMyInfo().getLegalIdentities().get(0);
 
             progressTracker.setCurrentStep(GRABBING_ORDER);
-            //find a Token State for order
-            QueryCriteria.VaultQueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
-            Vault.Page<OrderState> results = getServiceHub().getVaultService().queryBy(OrderState.class, criteria);
-            List<StateAndRef<OrderState>> orderStates = results.getStates();
-            StateAndRef<OrderState> orderStateRef = orderStates.stream()
-                    .filter(state -> state.getState().getData().getLinearId().getExternalId() != null
-                            && state.getState().getData().getLinearId().getExternalId().equals(orderID)
-                            && state.getState().getData().getSeller().equals(me))
-                    .findAny()
-                    .orElse(null);
+            //find the Order State by its external id, the latest one if several share it
+            StateAndRef<OrderState> orderStateRef = getServiceHub().cordaService(OrderBook.class).find(orderID);
             if (orderStateRef == null) {
-                //TODO Do not consider TokenState unite for now.
                 throw new FlowException("No Such Order, ID:" + this.orderID);
             }
-            //TODO, Ignore the duplicate
             OrderState inputOrderState = orderStateRef.getState().getData();
-            int balancePayment =
-                    //TODO float to int, here is a bug, and I will fix this later.
-                    (int)(inputOrderState.getSellingPrice()
-                            - inputOrderState.getSellingPrice()*inputOrderState.getDownPayments());
+            long balancePayment = inputOrderState.getBalancePayment();
             Party buyer = inputOrderState.getBuyer();
 
             progressTracker.setCurrentStep(CHECKING_TOKEN_AMOUNT);
@@ -95,31 +88,18 @@ public class OrderDeliveredFlow {
             FlowSession buyerPartySession = initiateFlow(buyer);
 
             TokenAsk tokenAsk = new TokenAsk(buyerPartySession);
-            StateAndRef<TokenState> tokenStateRef = tokenAsk.askTokenState(balancePayment, buyer);
-
-            // TODO Because add send/recv in our flow, so PartyA will receive the same questions,
-            // I add those code just for working around here.
-            Party tokenIssuer = tokenStateRef.getState().getData().getIssuer();
-            FlowSession issuerPartySession = initiateFlow(tokenIssuer);
-            TokenAsk tokenAskFromIssuer = new TokenAsk(issuerPartySession);
-            tokenAskFromIssuer.askTokenState(balancePayment, buyer);
+            List<StateAndRef<TokenState>> tokenStateRefs = tokenAsk.askTokenStates(balancePayment, buyer);
 
             progressTracker.setCurrentStep(GENERATING_TRANSACTION);
             TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
             //input state
             transactionBuilder.addInputState(orderStateRef);
-            transactionBuilder.addInputState(tokenStateRef);
+
+            //input and output Token states, with a change
+            TokenSelection.generatePayment(transactionBuilder, tokenStateRefs, me, balancePayment, notary);
+            TokenState tokenState = tokenStateRefs.get(0).getState().getData();
 
             //output state
-            TokenState tokenState = tokenStateRef.getState().getData();
-            TokenState tokenState4Seller = new TokenState(tokenState.getIssuer(), me, balancePayment);
-            transactionBuilder.addOutputState(tokenState4Seller, TokenContract.ID, notary);
-            if (tokenState.getAmount() > balancePayment) {
-                //Add for a change
-                TokenState tokenState4Buyer =
-                        new TokenState(tokenState.getIssuer(), buyer, tokenState.getAmount() - balancePayment);
-                transactionBuilder.addOutputState(tokenState4Buyer, TokenContract.ID, notary);
-            }
             OrderState outputOrderState = new OrderState(
                     inputOrderState.getData(),
                     inputOrderState.getBuyer(),
@@ -127,12 +107,12 @@ public class OrderDeliveredFlow {
                     inputOrderState.getLinearId(),
                     inputOrderState.getSellingPrice(),
                     inputOrderState.getDownPayments(),
-                    "delivered");
+                    OrderContract.DELIVERED);
             transactionBuilder.addOutputState(outputOrderState, OrderContract.CONTRACT_ID, notary);
 
             //command
             CommandData tokenCommandData = new TokenContract.Pay();
-            CommandData orderCommandData = new OrderContract.Commands.OrderPlacingCommand();
+            CommandData orderCommandData = new OrderContract.Commands.OrderDeliveredCommand();
 
             transactionBuilder.addCommand(
                     tokenCommandData,
@@ -140,6 +120,7 @@ public class OrderDeliveredFlow {
                     me.getOwningKey(),
                     buyer.getOwningKey());
             transactionBuilder.addCommand(orderCommandData, me.getOwningKey(), buyer.getOwningKey());
+            Party oracle = addDeliveredCommand(getServiceHub(), transactionBuilder, ImmutableList.of(orderStateRef));
 
             progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
             transactionBuilder.verify(getServiceHub());
@@ -147,18 +128,17 @@ public class OrderDeliveredFlow {
             progressTracker.setCurrentStep(SIGNING_TRANSACTION);
             // Sign the transaction.
             SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(transactionBuilder);
+            if (oracle != null) {
+                partSignedTx = partSignedTx.withAdditionalSignature(
+                        subFlow(new OracleFlow.DeliverySignFlow(oracle, deliveredFilteredTransaction(partSignedTx))));
+            }
 
             progressTracker.setCurrentStep(GATHERING_SIGS);
-            // Send the state to the counterparty, and receive it back with their signature.
-
-            List<FlowSession> otherPartySession =
-                    //Create FlowSession for Seller and Token Issuer
-                    ImmutableList.of(buyerPartySession, issuerPartySession);
+            // The token issuer co-signs through its own responder, which needs no vault lookup,
+            // and is asked without waiting for the buyer's signature.
+            List<FlowSession> otherPartySession = ImmutableList.of(buyerPartySession);
             final SignedTransaction fullySignedTx = subFlow(
-                    new CollectSignaturesFlow(
-                            partSignedTx,
-                            otherPartySession,
-                            CollectSignaturesFlow.Companion.tracker()));
+                    new TokenPaySignFlow.Request(partSignedTx, tokenState.getIssuer(), otherPartySession));
 
             progressTracker.setCurrentStep(FINALISING_TRANSACTION);
             // Notarise and record the transaction in both parties' vaults.
@@ -166,6 +146,226 @@ public class OrderDeliveredFlow {
         }
     }
 
+    /* Settles many of our orders at once. The orders are grouped by buyer, each buyer is asked once for
+     * token states covering all of its balance payments, and its orders are then delivered in
+     * transactions of at most `maxBatchSize` orders. The buyer's tokens come from a single issuer, and
+     * each transaction after the first spends the change of the one before it. */
+    @InitiatingFlow
+    @StartableByRPC
+    public static class BulkRequest extends FlowLogic<List<SignedTransaction>> {
+        static final String MAX_BATCH_SIZE = "deliverydemo.order.deliver.maxBatchSize";
+
+        private final List<String> orderIDs;
+        private final int maxBatchSize;
+
+        private final ProgressTracker.Step GRABBING_ORDER = new ProgressTracker.Step("Grabbing the orders by their ids.");
+        private final ProgressTracker.Step CHECKING_TOKEN_AMOUNT = new ProgressTracker.Step("Checking Buyers' token amount for these orders.");
+        private final ProgressTracker.Step SETTLING_ORDERS = new ProgressTracker.Step("Generating, signing and recording the transactions.");
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                GRABBING_ORDER,
+                CHECKING_TOKEN_AMOUNT,
+                SETTLING_ORDERS
+        );
+
+        public BulkRequest(List<String> orderIDs) {
+            this(orderIDs, Integer.getInteger(MAX_BATCH_SIZE, 50));
+        }
+
+        public BulkRequest(List<String> orderIDs, int maxBatchSize) {
+            this.orderIDs = orderIDs;
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            if (maxBatchSize <= 0) {
+                throw new FlowException("Max batch size must be positive.");
+            }
+            Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            Party me = getServiceHub().getMyInfo().getLegalIdentities().get(0);
+
+            progressTracker.setCurrentStep(GRABBING_ORDER);
+            Set<String> pendingIDs = new LinkedHashSet<>(orderIDs);
+            Map<Party, List<StateAndRef<OrderState>>> ordersByBuyer = new LinkedHashMap<>();
+            for (StateAndRef<OrderState> orderStateRef : getServiceHub().cordaService(OrderBook.class).findAll(pendingIDs).values()) {
+                OrderState orderState = orderStateRef.getState().getData();
+                pendingIDs.remove(orderState.getLinearId().getExternalId());
+                ordersByBuyer.computeIfAbsent(orderState.getBuyer(), it -> new ArrayList<>()).add(orderStateRef);
+            }
+            if (!pendingIDs.isEmpty()) {
+                throw new FlowException("No Such Order, ID:" + String.join(",", pendingIDs));
+            }
+
+            List<SignedTransaction> finalisedTxs = new ArrayList<>();
+            for (Map.Entry<Party, List<StateAndRef<OrderState>>> buyerOrders : ordersByBuyer.entrySet()) {
+                Party buyer = buyerOrders.getKey();
+                List<List<StateAndRef<OrderState>>> chunks = Lists.partition(buyerOrders.getValue(), maxBatchSize);
+                long balancePayment = totalBalancePayment(buyerOrders.getValue());
+
+                progressTracker.setCurrentStep(CHECKING_TOKEN_AMOUNT);
+                //ask the buyer for the token, once for all of its orders
+                FlowSession buyerPartySession = initiateFlow(buyer);
+                List<StateAndRef<TokenState>> tokenStateRefs =
+                        new TokenAsk(buyerPartySession).askTokenStates(balancePayment, buyer);
+                buyerPartySession.send(chunks.size());
+
+                progressTracker.setCurrentStep(SETTLING_ORDERS);
+                for (List<StateAndRef<OrderState>> chunk : chunks) {
+                    SignedTransaction finalisedTx = settle(chunk, tokenStateRefs, buyerPartySession, me, notary);
+                    finalisedTxs.add(finalisedTx);
+                    // The next chunk is paid from this one's change.
+                    tokenStateRefs = finalisedTx.getTx().outRefsOfType(TokenState.class).stream()
+                            .filter(it -> it.getState().getData().getOwner().equals(buyer))
+                            .collect(Collectors.toList());
+                }
+            }
+            return finalisedTxs;
+        }
+
+        @Suspendable
+        private SignedTransaction settle(List<StateAndRef<OrderState>> orderStateRefs,
+                                         List<StateAndRef<TokenState>> tokenStateRefs,
+                                         FlowSession buyerPartySession,
+                                         Party me, Party notary) throws FlowException {
+            if (tokenStateRefs.isEmpty()) {
+                throw new FlowException("The buyer has no enough amount.");
+            }
+            Party buyer = buyerPartySession.getCounterparty();
+            TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
+
+            long balancePayment = totalBalancePayment(orderStateRefs);
+            for (StateAndRef<OrderState> orderStateRef : orderStateRefs) {
+                OrderState inputOrderState = orderStateRef.getState().getData();
+                transactionBuilder.addInputState(orderStateRef);
+                transactionBuilder.addOutputState(new OrderState(
+                        inputOrderState.getData(),
+                        inputOrderState.getBuyer(),
+                        inputOrderState.getSeller(),
+                        inputOrderState.getLinearId(),
+                        inputOrderState.getSellingPrice(),
+                        inputOrderState.getDownPayments(),
+                        OrderContract.DELIVERED), OrderContract.CONTRACT_ID, notary);
+            }
+
+            //input and output Token states, with a change
+            TokenSelection.generatePayment(transactionBuilder, tokenStateRefs, me, balancePayment, notary);
+            TokenState tokenState = tokenStateRefs.get(0).getState().getData();
+
+            //command
+            transactionBuilder.addCommand(
+                    new TokenContract.Pay(),
+                    tokenState.getIssuer().getOwningKey(),
+                    me.getOwningKey(),
+                    buyer.getOwningKey());
+            transactionBuilder.addCommand(
+                    new OrderContract.Commands.OrderDeliveredCommand(), me.getOwningKey(), buyer.getOwningKey());
+            Party oracle = addDeliveredCommand(getServiceHub(), transactionBuilder, orderStateRefs);
+
+            transactionBuilder.verify(getServiceHub());
+            SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(transactionBuilder);
+            if (oracle != null) {
+                partSignedTx = partSignedTx.withAdditionalSignature(
+                        subFlow(new OracleFlow.DeliverySignFlow(oracle, deliveredFilteredTransaction(partSignedTx))));
+            }
+            final SignedTransaction fullySignedTx = subFlow(new TokenPaySignFlow.Request(
+                    partSignedTx, tokenState.getIssuer(), ImmutableList.of(buyerPartySession)));
+            return subFlow(new FinalityFlow(fullySignedTx));
+        }
+
+        private static long totalBalancePayment(List<StateAndRef<OrderState>> orderStateRefs) throws FlowException {
+            long balancePayment = 0;
+            try {
+                for (StateAndRef<OrderState> orderStateRef : orderStateRefs) {
+                    balancePayment = Math.addExact(balancePayment, orderStateRef.getState().getData().getBalancePayment());
+                }
+            } catch (ArithmeticException e) {
+                throw new FlowException("Balance payments out of range for " + orderStateRefs.size() + " orders.", e);
+            }
+            return balancePayment;
+        }
+    }
+
+    // deliverydemo.order.deliver.oracleMode, SKIP (default) or ALWAYS: whether a delivery carries the
+    // delivery Oracle's attestation, and whether the buyer insists on it before paying. Opt-in, as the
+    // Oracle only attests once it is given a source of delivery events.
+    public static final String ORACLE_MODE = "deliverydemo.order.deliver.oracleMode";
+
+    private static Party findDeliveryOracle(ServiceHub serviceHub) throws FlowException {
+        return "ALWAYS".equalsIgnoreCase(System.getProperty(ORACLE_MODE, "SKIP").trim()) ? Oracle.find(serviceHub) : null;
+    }
+
+    // Adds the command the Oracle signs to attest every order is delivered, returns the Oracle, or null in SKIP mode.
+    private static Party addDeliveredCommand(ServiceHub serviceHub, TransactionBuilder transactionBuilder,
+                                             List<StateAndRef<OrderState>> orderStateRefs) throws FlowException {
+        Party oracle = findDeliveryOracle(serviceHub);
+        if (oracle != null) {
+            List<UniqueIdentifier> linearIds = orderStateRefs.stream()
+                    .map(it -> it.getState().getData().getLinearId())
+                    .collect(Collectors.toList());
+            transactionBuilder.addCommand(new Oracle.DeliveryOracle.Delivered(linearIds), oracle.getOwningKey());
+        }
+        return oracle;
+    }
+
+    // Only the Oracle's command is revealed to the Oracle.
+    private static FilteredTransaction deliveredFilteredTransaction(SignedTransaction partSignedTx) {
+        return partSignedTx.buildFilteredTransaction(it ->
+                it instanceof Command && ((Command) it).getValue() instanceof Oracle.DeliveryOracle.Delivered);
+    }
+
+    // Whether the Oracle has signed a command attesting the delivery of every order the transaction
+    // delivers. SignTransactionFlow verifies the signatures present before this check runs.
+    private static boolean attestedBy(SignedTransaction stx, Party oracle) {
+        if (stx.getSigs().stream().noneMatch(sig -> sig.getBy().equals(oracle.getOwningKey()))) {
+            return false;
+        }
+        List<UniqueIdentifier> linearIds = stx.getTx().outputsOfType(OrderState.class).stream()
+                .map(OrderState::getLinearId)
+                .collect(Collectors.toList());
+        return stx.getTx().getCommands().stream().anyMatch(command ->
+                command.getValue() instanceof Oracle.DeliveryOracle.Delivered
+                        && command.getSigners().contains(oracle.getOwningKey())
+                        && ((Oracle.DeliveryOracle.Delivered) command.getValue()).getLinearIds().containsAll(linearIds));
+    }
+
+    // What a buyer checks before paying: every order delivered is ours, bought from the requesting seller,
+    // and the seller receives exactly their balance payments, attested by the Oracle unless in SKIP mode.
+    private static void checkSettlement(SignedTransaction stx, Party me, Party seller, Party oracle) {
+        requireThat(require -> {
+            final List<OrderState> oOrderStateList = stx.getTx().outputsOfType(OrderState.class);
+            require.using("Must have a output OrderState", !oOrderStateList.isEmpty());
+            require.using("The state of OrderState must be delivered.",
+                    oOrderStateList.stream().allMatch(
+                            orderState -> orderState.getState().equals(OrderContract.DELIVERED)));
+            require.using("Every OrderState must be bought by us from the requesting seller",
+                    oOrderStateList.stream().allMatch(
+                            orderState -> orderState.getBuyer().equals(me) && orderState.getSeller().equals(seller)));
+
+            long balancePayments = 0;
+            for (OrderState orderState : oOrderStateList) {
+                balancePayments = Math.addExact(balancePayments, orderState.getBalancePayment());
+            }
+            long received = 0;
+            for (TokenState tokenState : stx.getTx().outputsOfType(TokenState.class)) {
+                if (tokenState.getOwner().equals(seller)) {
+                    received = Math.addExact(received, tokenState.getAmount());
+                }
+            }
+            require.using("The seller must receive exactly the balance payments of the orders",
+                    received == balancePayments);
+            require.using("The delivery must be attested by the Oracle.",
+                    oracle == null || attestedBy(stx, oracle));
+            return null;
+        });
+    }
+
     @InitiatedBy(Request.class)
     public static class Confirm extends FlowLogic<SignedTransaction> {
 
@@ -188,6 +388,8 @@ public class OrderDeliveredFlow {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            Party me = getOurIdentity();
+            Party oracle = findDeliveryOracle(getServiceHub());
             class SignTxFlow extends SignTransactionFlow {
                 private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
                     super(otherPartyFlow, progressTracker);
@@ -195,37 +397,17 @@ public class OrderDeliveredFlow {
 
                 @Override
                 protected void checkTransaction(SignedTransaction stx) {
-                    requireThat(require -> {
-                        //final List<StateRef> inputStateList = stx.getTx().getInputs();
-                        //TODO only has hash key and ID, how to check amount in TokenState?
-                        final List<OrderState> iOrderStateList = stx.getTx().outputsOfType(OrderState.class);
-                        require.using("Must have a output OrderState",iOrderStateList.size() == 1);
-                        require.using("The state of OrderState must be delivered.",
-                                iOrderStateList.get(0).getState().equals("delivered"));
-                        //TODO add more check
-                        return null;
-                    });
+                    checkSettlement(stx, me, getOtherSideSession().getCounterparty(), oracle);
                 }
             }
 
             progressTracker.setCurrentStep(RECEIVING_AND_SENDING_DATA);
             TokenAsk tokenAsk = new TokenAsk(otherPartyFlow);
-            Integer amount = tokenAsk.receiveAmount();
-            Party owner = tokenAsk.receiveOwner();
-            //find a Token State for order
-            QueryCriteria.VaultQueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
-            Vault.Page<TokenState> results = getServiceHub().getVaultService().queryBy(TokenState.class, criteria);
-            List<StateAndRef<TokenState>> tokenStates = results.getStates();
-            StateAndRef<TokenState> tokenStateRef = tokenStates.stream()
-                    .filter(state -> state.getState().getData().getAmount() >= amount
-                            && state.getState().getData().getOwner().equals(owner))
-                    .findAny()
-                    .orElse(null);
-            if (tokenStateRef == null) {
-                //TODO Do not consider TokenState unite for now.
-                throw new FlowException("The buyer has no enough amount.");
-            }
-            tokenAsk.sendStateAndRef(tokenStateRef);
+            TokenRequest tokenRequest = tokenAsk.receiveRequest();
+            //find Token States covering the amount
+            List<StateAndRef<TokenState>> tokenStateRefs = TokenSelection.select(
+                    getServiceHub(), tokenRequest.getOwner(), tokenRequest.getAmount(), getRunId().getUuid());
+            tokenAsk.sendStateAndRefs(tokenStateRefs);
 
             progressTracker.setCurrentStep(SIGNING);
             subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
@@ -236,4 +418,49 @@ public class OrderDeliveredFlow {
         }
     }
 
-}
\ No newline at end of file
+    @InitiatedBy(BulkRequest.class)
+    public static class BulkConfirm extends FlowLogic<Void> {
+
+        private final FlowSession otherPartyFlow;
+
+        public BulkConfirm(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            Party me = getOurIdentity();
+            Party oracle = findDeliveryOracle(getServiceHub());
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    checkSettlement(stx, me, getOtherSideSession().getCounterparty(), oracle);
+                }
+            }
+
+            TokenAsk tokenAsk = new TokenAsk(otherPartyFlow);
+            TokenRequest tokenRequest = tokenAsk.receiveRequest();
+            //find Token States covering all the orders
+            List<StateAndRef<TokenState>> tokenStateRefs = TokenSelection.select(
+                    getServiceHub(), tokenRequest.getOwner(), tokenRequest.getAmount(), getRunId().getUuid());
+            tokenAsk.sendStateAndRefs(tokenStateRefs);
+
+            int transactions = otherPartyFlow.receive(Integer.class).unwrap(it -> {
+                if (it <= 0) {
+                    throw new FlowException("Nothing to settle.");
+                }
+                return it;
+            });
+            for (int i = 0; i < transactions; i++) {
+                subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+            }
+            return null;
+        }
+    }
+
+}
@@ -1,19 +1,26 @@
 package com.cienet.deliverydemo.order;
 
 import co.paralleluniverse.fibers.Suspendable;
+import com.cienet.deliverydemo.token.Money;
 import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenPaySignFlow;
+import com.cienet.deliverydemo.token.TokenSelection;
 import com.cienet.deliverydemo.token.TokenState;
 import com.google.common.collect.ImmutableList;
 import net.corda.core.contracts.*;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.CordaSerializable;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 
+import java.math.BigDecimal;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -26,19 +33,14 @@ public class OrderPlaceFlow {
     public static class Request extends FlowLogic<SignedTransaction> {
         private final Party seller;
         private final String orderID;
-        private final float sellingPrice;
-        private final float downPayments;
+        private final BigDecimal sellingPrice;
+        private final BigDecimal downPayments;
 
         private final ProgressTracker.Step CHECKING_TOKEN_AMOUNT = new ProgressTracker.Step("Checking Buyer's token amount for this order.");
         private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
         private final ProgressTracker.Step VERIFYING_TRANSACTION = new ProgressTracker.Step("Verifying contract constraints.");
         private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
-        private final ProgressTracker.Step GATHERING_SIGS = new ProgressTracker.Step("Gathering the counterparty's signature.") {
-            @Override
-            public ProgressTracker childProgressTracker() {
-                return CollectSignaturesFlow.Companion.tracker();
-            }
-        };
+        private final ProgressTracker.Step GATHERING_SIGS = new ProgressTracker.Step("Gathering the counterparties' signatures.");
         private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.") {
             @Override
             public ProgressTracker childProgressTracker() {
@@ -55,7 +57,7 @@ public class OrderPlaceFlow {
                 FINALISING_TRANSACTION
         );
 
-        public Request(Party seller,String orderID, float sellingPrice, float downPayments) {
+        public Request(Party seller,String orderID, BigDecimal sellingPrice, BigDecimal downPayments) {
             this.seller = seller;
             this.orderID = orderID;
             this.sellingPrice = sellingPrice;
@@ -73,47 +75,22 @@ public class OrderPlaceFlow {
             Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
             Party me = getServiceHub().getMyInfo().getLegalIdentities().get(0);
 
-            int deposit = (int) (sellingPrice * downPayments);
-
             progressTracker.setCurrentStep(CHECKING_TOKEN_AMOUNT);
-            //find a Token State for order
-            QueryCriteria.VaultQueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
-            Vault.Page<TokenState> results = getServiceHub().getVaultService().queryBy(TokenState.class, criteria);
-            List<StateAndRef<TokenState>> tokenStates = results.getStates();
-            StateAndRef<TokenState> tokenStateRef = tokenStates.stream()
-                    .filter(state -> state.getState().getData().getAmount() >= deposit
-                            && state.getState().getData().getOwner().equals(me))
-                    .findAny()
-                    .orElse(null);
-            if (tokenStateRef == null) {
-                //TODO Do not consider TokenState unite for now.
-                throw new FlowException("The buyer has no enough amount.");
-            }
+            //output state
+            OrderState orderState = newOrder(me, seller, orderID, sellingPrice, downPayments);
+            long deposit = orderState.getDeposit();
+
+            //find Token States covering the deposit
+            List<StateAndRef<TokenState>> tokenStateRefs = TokenSelection.select(
+                    getServiceHub(), me, deposit, getRunId().getUuid());
 
             progressTracker.setCurrentStep(GENERATING_TRANSACTION);
             TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
-            //input state
-            transactionBuilder.addInputState(tokenStateRef);
+            transactionBuilder.addOutputState(orderState, OrderContract.CONTRACT_ID, notary);
 
-            //output state
-            OrderState orderState = new OrderState(
-                    "This is an demo order.",
-                    me, seller,
-                    new UniqueIdentifier(this.orderID, UUID.randomUUID()),
-                    sellingPrice, downPayments,
-                    "shipping");
-
-            transactionBuilder.addOutputState(orderState, TokenContract.ID, notary);
-
-            TokenState tokenState = tokenStateRef.getState().getData();
-            TokenState tokenState4Seller = new TokenState(tokenState.getIssuer(), seller, deposit);
-            transactionBuilder.addOutputState(tokenState4Seller, TokenContract.ID, notary);
-            if (tokenState.getAmount() > deposit) {
-                //Add for a change
-                TokenState tokenState4Buyer =
-                        new TokenState(tokenState.getIssuer(), me, tokenState.getAmount() - deposit);
-                transactionBuilder.addOutputState(tokenState4Buyer, TokenContract.ID, notary);
-            }
+            //input and output Token states, with a change
+            TokenSelection.generatePayment(transactionBuilder, tokenStateRefs, seller, deposit, notary);
+            TokenState tokenState = tokenStateRefs.get(0).getState().getData();
 
             //command
             CommandData tokenCommandData = new TokenContract.Pay();
@@ -134,16 +111,11 @@ public class OrderPlaceFlow {
             SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(transactionBuilder);
 
             progressTracker.setCurrentStep(GATHERING_SIGS);
-            // Send the state to the counterparty, and receive it back with their signature.
-
-            List<FlowSession> otherPartySession =
-                    //Create FlowSession for Seller and Token Issuer
-                    ImmutableList.of(initiateFlow(seller), initiateFlow(tokenState.getIssuer()));
+            // The token issuer co-signs through its own responder, which needs no vault lookup,
+            // and is asked without waiting for the seller's signature.
+            List<FlowSession> otherPartySession = ImmutableList.of(initiateFlow(seller));
             final SignedTransaction fullySignedTx = subFlow(
-                    new CollectSignaturesFlow(
-                            partSignedTx,
-                            otherPartySession,
-                            CollectSignaturesFlow.Companion.tracker()));
+                    new TokenPaySignFlow.Request(partSignedTx, tokenState.getIssuer(), otherPartySession));
 
             progressTracker.setCurrentStep(FINALISING_TRANSACTION);
             // Notarise and record the transaction in both parties' vaults.
@@ -151,6 +123,161 @@ public class OrderPlaceFlow {
         }
     }
 
+    /* One order of a BulkRequest. */
+    @CordaSerializable
+    public static class Item {
+        private final Party seller;
+        private final String orderID;
+        private final BigDecimal sellingPrice;
+        private final BigDecimal downPayments;
+
+        public Item(Party seller, String orderID, BigDecimal sellingPrice, BigDecimal downPayments) {
+            this.seller = seller;
+            this.orderID = orderID;
+            this.sellingPrice = sellingPrice;
+            this.downPayments = downPayments;
+        }
+
+        public Party getSeller() {
+            return seller;
+        }
+
+        public String getOrderID() {
+            return orderID;
+        }
+
+        public BigDecimal getSellingPrice() {
+            return sellingPrice;
+        }
+
+        public BigDecimal getDownPayments() {
+            return downPayments;
+        }
+    }
+
+    /* Places a cart of orders, with any number of sellers, in one transaction. The buyer's tokens are
+     * selected once for all the down payments, every seller gets one output with the sum of its down
+     * payments, and whatever is left comes back as a single change output. */
+    @InitiatingFlow
+    @StartableByRPC
+    public static class BulkRequest extends FlowLogic<SignedTransaction> {
+        private final List<Item> items;
+
+        private final ProgressTracker.Step CHECKING_TOKEN_AMOUNT = new ProgressTracker.Step("Checking Buyer's token amount for these orders.");
+        private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+        private final ProgressTracker.Step VERIFYING_TRANSACTION = new ProgressTracker.Step("Verifying contract constraints.");
+        private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+        private final ProgressTracker.Step GATHERING_SIGS = new ProgressTracker.Step("Gathering the counterparties' signatures.");
+        private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                CHECKING_TOKEN_AMOUNT,
+                GENERATING_TRANSACTION,
+                VERIFYING_TRANSACTION,
+                SIGNING_TRANSACTION,
+                GATHERING_SIGS,
+                FINALISING_TRANSACTION
+        );
+
+        public BulkRequest(List<Item> items) {
+            this.items = items;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            if (items.isEmpty()) {
+                throw new FlowException("No order to place.");
+            }
+            Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            Party me = getServiceHub().getMyInfo().getLegalIdentities().get(0);
+
+            progressTracker.setCurrentStep(CHECKING_TOKEN_AMOUNT);
+            List<OrderState> orderStates = new ArrayList<>();
+            Map<Party, Long> depositBySeller = new LinkedHashMap<>();
+            long deposits = 0;
+            for (Item item : items) {
+                OrderState orderState = newOrder(
+                        me, item.getSeller(), item.getOrderID(), item.getSellingPrice(), item.getDownPayments());
+                orderStates.add(orderState);
+                depositBySeller.merge(item.getSeller(), orderState.getDeposit(), Math::addExact);
+                deposits = Math.addExact(deposits, orderState.getDeposit());
+            }
+            //find Token States covering all the deposits
+            List<StateAndRef<TokenState>> tokenStateRefs = TokenSelection.select(
+                    getServiceHub(), me, deposits, getRunId().getUuid());
+
+            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
+            orderStates.forEach(orderState ->
+                    transactionBuilder.addOutputState(orderState, OrderContract.CONTRACT_ID, notary));
+
+            //input and output Token states, one payment per seller, with a change
+            TokenSelection.generatePayments(transactionBuilder, tokenStateRefs, depositBySeller, notary);
+            TokenState tokenState = tokenStateRefs.get(0).getState().getData();
+
+            //command
+            List<PublicKey> tokenSigners = new ArrayList<>();
+            tokenSigners.add(tokenState.getIssuer().getOwningKey());
+            tokenSigners.add(me.getOwningKey());
+            List<PublicKey> orderSigners = new ArrayList<>();
+            orderSigners.add(me.getOwningKey());
+            for (Party seller : depositBySeller.keySet()) {
+                if (!seller.equals(me)) {
+                    tokenSigners.add(seller.getOwningKey());
+                    orderSigners.add(seller.getOwningKey());
+                }
+            }
+            transactionBuilder.addCommand(new TokenContract.Pay(), tokenSigners);
+            transactionBuilder.addCommand(new OrderContract.Commands.OrderPlacingCommand(), orderSigners);
+
+            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            transactionBuilder.verify(getServiceHub());
+
+            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(transactionBuilder);
+
+            progressTracker.setCurrentStep(GATHERING_SIGS);
+            List<FlowSession> otherPartySessions = new ArrayList<>();
+            for (Party seller : depositBySeller.keySet()) {
+                if (!seller.equals(me)) {
+                    otherPartySessions.add(initiateFlow(seller));
+                }
+            }
+            final SignedTransaction fullySignedTx = subFlow(
+                    new TokenPaySignFlow.Request(partSignedTx, tokenState.getIssuer(), otherPartySessions));
+
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            return subFlow(new FinalityFlow(fullySignedTx));
+        }
+    }
+
+    // Prices and down payments come in as decimals, e.g. 12.9 and 0.1, and are kept as minor units and
+    // basis points.
+    private static OrderState newOrder(Party buyer, Party seller, String orderID,
+                                       BigDecimal sellingPrice, BigDecimal downPayments) throws FlowException {
+        try {
+            return new OrderState(
+                    "This is an demo order.",
+                    buyer, seller,
+                    new UniqueIdentifier(orderID, UUID.randomUUID()),
+                    Money.minorUnits(sellingPrice), Money.basisPoints(downPayments),
+                    OrderContract.SHIPPING);
+        } catch (ArithmeticException e) {
+            throw new FlowException("Price or down payments out of range for order " + orderID + ".", e);
+        }
+    }
+
     @InitiatedBy(Request.class)
     public static class Confirm extends FlowLogic<SignedTransaction> {
 
@@ -163,23 +290,76 @@ public class OrderPlaceFlow {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            Party me = getOurIdentity();
+
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+                    requireThat(require -> {
+                        final List<OrderState> orders = stx.getTx().outputsOfType(OrderState.class);
+                        require.using("Must have a output OrderState", orders.size() == 1);
+                        final OrderState orderState = orders.get(0);
+                        require.using("The OrderState must be sold by us", orderState.getSeller().equals(me));
+                        require.using("The OrderState must be placed by the requesting buyer",
+                                orderState.getBuyer().equals(getOtherSideSession().getCounterparty()));
+                        require.using("The state of output OrderState must be shipping.",
+                                orderState.getState().equals(OrderContract.SHIPPING));
+                        require.using("The selling price must be positive", orderState.getSellingPrice() > 0);
+                        require.using("The down payments must be between 0 and " + Money.BASIS_POINTS + " basis points",
+                                orderState.getDownPayments() >= 0 && orderState.getDownPayments() <= Money.BASIS_POINTS);
+                        require.using("We must receive the down payment of our order",
+                                receivedBy(stx, me) == orderState.getDeposit());
+                        return null;
+                    });
+                }
+            }
+
+            return subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+        }
+    }
+
+    @InitiatedBy(BulkRequest.class)
+    public static class BulkConfirm extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartyFlow;
+
+        public BulkConfirm(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            Party me = getOurIdentity();
+
             class SignTxFlow extends SignTransactionFlow {
                 private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
                     super(otherPartyFlow, progressTracker);
                 }
 
+                // The contract has already checked each seller's net token flow is its deposits, so
+                // receiving exactly our deposits in outputs also means none of our tokens are spent.
                 @Override
                 protected void checkTransaction(SignedTransaction stx) {
                     requireThat(require -> {
-                        //final List<StateRef> inputStateList = stx.getTx().getInputs();
-                        //TODO only has hash key and ID, how to check amount in TokenState?
-                        final List<TransactionState<ContractState>> outputTxStateList = stx.getTx().getOutputs();
-                        List<TransactionState<ContractState>> outputOrderStateList =
-                                outputTxStateList.stream()
-                                        .filter(state -> state.getData() instanceof OrderState)
-                                        .collect(Collectors.toList());
-                        require.using("Must have a output OrderState",outputOrderStateList.size() == 1);
-                        //TODO add more check
+                        final List<OrderState> ourOrders = stx.getTx().outputsOfType(OrderState.class).stream()
+                                .filter(orderState -> orderState.getSeller().equals(me))
+                                .collect(Collectors.toList());
+                        require.using("Must have a output OrderState sold by us", !ourOrders.isEmpty());
+                        require.using("Every OrderState sold by us must be placed by the requesting buyer",
+                                ourOrders.stream().allMatch(orderState ->
+                                        orderState.getBuyer().equals(getOtherSideSession().getCounterparty())));
+
+                        long deposits = 0;
+                        for (OrderState orderState : ourOrders) {
+                            deposits = Math.addExact(deposits, orderState.getDeposit());
+                        }
+                        require.using("We must receive the down payments of our orders",
+                                receivedBy(stx, me) == deposits);
                         return null;
                     });
                 }
@@ -189,4 +369,14 @@ public class OrderPlaceFlow {
         }
     }
 
-}
\ No newline at end of file
+    // The tokens a transaction's outputs hand to us.
+    private static long receivedBy(SignedTransaction stx, Party me) {
+        long received = 0;
+        for (TokenState tokenState : stx.getTx().outputsOfType(TokenState.class)) {
+            if (tokenState.getOwner().equals(me)) {
+                received = Math.addExact(received, tokenState.getAmount());
+            }
+        }
+        return received;
+    }
+}
@@ -0,0 +1,94 @@
+package com.cienet.deliverydemo.order;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.AggregateFunctionType;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.Column;
+import net.corda.core.node.services.vault.ColumnPredicate;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+
+/**
+ * Vault query criteria over {@link OrderSchemaV1}, so order lookups hit the indexed columns
+ * instead of streaming over every unconsumed OrderState.
+ */
+public class OrderQueries {
+    // A fixed order, so consecutive pages neither repeat nor skip orders.
+    public static final Sort BY_EXTERNAL_ID = new Sort(ImmutableList.of(
+            new Sort.SortColumn(
+                    new SortAttribute.Custom(OrderSchemaV1.PersistentOrder.class, "externalId"),
+                    Sort.Direction.ASC)));
+
+    // The most recently recorded order first, so a lookup of an external id shared by several of our
+    // orders always resolves to the same one: the latest, as the order book's update feed does.
+    public static final Sort LATEST_FIRST = new Sort(ImmutableList.of(
+            new Sort.SortColumn(
+                    new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.DESC),
+            new Sort.SortColumn(
+                    new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.DESC),
+            new Sort.SortColumn(
+                    new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.DESC)));
+
+    private OrderQueries() {
+    }
+
+    public static QueryCriteria byExternalIdAndSeller(String externalId, Party seller) {
+        QueryCriteria generalCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        QueryCriteria externalIdCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(field("externalId"), externalId));
+        QueryCriteria sellerCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(field("seller"), seller.getName().toString()));
+        return generalCriteria.and(externalIdCriteria).and(sellerCriteria);
+    }
+
+    public static QueryCriteria byExternalIdsAndSeller(Collection<String> externalIds, Party seller) {
+        QueryCriteria generalCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        QueryCriteria externalIdCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.in(field("externalId"), externalIds));
+        QueryCriteria sellerCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(field("seller"), seller.getName().toString()));
+        return generalCriteria.and(externalIdCriteria).and(sellerCriteria);
+    }
+
+    public static QueryCriteria byExternalId(String externalId) {
+        QueryCriteria generalCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        QueryCriteria externalIdCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(field("externalId"), externalId));
+        return generalCriteria.and(externalIdCriteria);
+    }
+
+    public static QueryCriteria byStatus(String status) {
+        QueryCriteria generalCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        QueryCriteria statusCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(field("status"), status));
+        return generalCriteria.and(statusCriteria);
+    }
+
+    /**
+     * The number of unconsumed orders grouped by status, as (count, status) pairs. Builder.count takes
+     * no group by columns, so the expression is spelled out.
+     */
+    public static QueryCriteria countByStatus() {
+        Column<OrderSchemaV1.PersistentOrder, String> status = new Column<>(field("status"));
+        return new QueryCriteria.VaultCustomQueryCriteria(new CriteriaExpression.AggregateFunctionExpression<>(
+                status,
+                new ColumnPredicate.AggregateFunction<>(AggregateFunctionType.COUNT),
+                ImmutableList.of(status),
+                null));
+    }
+
+    private static Field field(String name) {
+        try {
+            return OrderSchemaV1.PersistentOrder.class.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("No such column in OrderSchemaV1: " + name, e);
+        }
+    }
+}
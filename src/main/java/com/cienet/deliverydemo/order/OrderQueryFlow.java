@@ -0,0 +1,88 @@
+package com.cienet.deliverydemo.order;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/* Order queries for RPC clients, over the indexed OrderSchemaV1 columns. Lists are paged and counts
+ * are computed by the database, so a client never receives more orders than it shows. */
+public class OrderQueryFlow {
+
+    /* An unconsumed order, bought or sold, by its external id. */
+    @StartableByRPC
+    public static class Get extends FlowLogic<StateAndRef<OrderState>> {
+        private final String orderID;
+
+        public Get(String orderID) {
+            this.orderID = orderID;
+        }
+
+        @Suspendable
+        @Override
+        public StateAndRef<OrderState> call() throws FlowException {
+            return getServiceHub().getVaultService().queryBy(
+                    OrderState.class,
+                    OrderQueries.byExternalId(orderID),
+                    new PageSpecification(DEFAULT_PAGE_NUM, 1))
+                    .getStates()
+                    .stream()
+                    .findFirst()
+                    .orElseThrow(() -> new FlowException("No Such Order, ID:" + orderID));
+        }
+    }
+
+    /* One page of the unconsumed orders in a status, by external id. Pages are numbered from 1. */
+    @StartableByRPC
+    public static class ListByStatus extends FlowLogic<Vault.Page<OrderState>> {
+        private final String status;
+        private final int pageNumber;
+        private final int pageSize;
+
+        public ListByStatus(String status, int pageNumber, int pageSize) {
+            this.status = status;
+            this.pageNumber = pageNumber;
+            this.pageSize = pageSize;
+        }
+
+        @Suspendable
+        @Override
+        public Vault.Page<OrderState> call() throws FlowException {
+            if (pageNumber < DEFAULT_PAGE_NUM || pageSize <= 0) {
+                throw new FlowException("Page numbers start at 1 and page sizes must be positive.");
+            }
+            return getServiceHub().getVaultService().queryBy(
+                    OrderState.class,
+                    OrderQueries.byStatus(status),
+                    new PageSpecification(pageNumber, pageSize),
+                    OrderQueries.BY_EXTERNAL_ID);
+        }
+    }
+
+    /* The number of unconsumed orders in each status. */
+    @StartableByRPC
+    public static class CountByStatus extends FlowLogic<Map<String, Long>> {
+
+        @Suspendable
+        @Override
+        public Map<String, Long> call() throws FlowException {
+            List<Object> rows = getServiceHub().getVaultService()
+                    .queryBy(OrderState.class, OrderQueries.countByStatus())
+                    .getOtherResults();
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (int i = 0; i + 1 < rows.size(); i += 2) {
+                counts.put((String) rows.get(i + 1), ((Number) rows.get(i)).longValue());
+            }
+            return counts;
+        }
+    }
+}
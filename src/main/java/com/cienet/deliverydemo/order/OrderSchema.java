@@ -0,0 +1,7 @@
+package com.cienet.deliverydemo.order;
+
+/**
+ * The family of schemas for OrderState.
+ */
+public class OrderSchema {
+}
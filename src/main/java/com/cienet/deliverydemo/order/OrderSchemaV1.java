@@ -0,0 +1,77 @@
+package com.cienet.deliverydemo.order;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.UUID;
+
+/**
+ * An OrderState schema.
+ */
+public class OrderSchemaV1 extends MappedSchema {
+    public OrderSchemaV1() {
+        super(OrderSchema.class, 1, ImmutableList.of(PersistentOrder.class));
+    }
+
+    @Entity
+    @Table(name = "order_states", indexes = {
+            @Index(name = "order_external_id_idx", columnList = "external_id"),
+            @Index(name = "order_buyer_idx", columnList = "buyer"),
+            @Index(name = "order_seller_idx", columnList = "seller"),
+            @Index(name = "order_status_idx", columnList = "status")
+    })
+    public static class PersistentOrder extends PersistentState {
+        @Column(name = "external_id")
+        private final String externalId;
+
+        @Column(name = "buyer")
+        private final String buyer;
+
+        @Column(name = "seller")
+        private final String seller;
+
+        @Column(name = "status")
+        private final String status;
+
+        @Column(name = "linear_id")
+        private final UUID linearId;
+
+        public PersistentOrder(String externalId, String buyer, String seller, String status, UUID linearId) {
+            this.externalId = externalId;
+            this.buyer = buyer;
+            this.seller = seller;
+            this.status = status;
+            this.linearId = linearId;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentOrder() {
+            this(null, "", "", "", UUID.randomUUID());
+        }
+
+        public String getExternalId() {
+            return externalId;
+        }
+
+        public String getBuyer() {
+            return buyer;
+        }
+
+        public String getSeller() {
+            return seller;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public UUID getLinearId() {
+            return linearId;
+        }
+    }
+}
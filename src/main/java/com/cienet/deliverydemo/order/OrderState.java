@@ -1,28 +1,33 @@
 package com.cienet.deliverydemo.order;
 
+import com.cienet.deliverydemo.token.Money;
 import com.google.common.collect.ImmutableList;
 import net.corda.core.contracts.LinearState;
 import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
 
-public class OrderState implements LinearState, Comparable<OrderState> {
+public class OrderState implements LinearState, QueryableState, Comparable<OrderState> {
     private final String data;
     private final Party buyer;
     private final Party seller;
     private final UniqueIdentifier linearId;
-    private final float sellingPrice;
-    private final float downPayments;
+    // In minor units and basis points of the selling price, see Money.
+    private final long sellingPrice;
+    private final int downPayments;
     private final String state;
 
     public OrderState(
             String data,
             Party buyer, Party seller,
             UniqueIdentifier linearId,
-            float sellingPrice, float downPayments,
+            long sellingPrice, int downPayments,
             String state) {
         this.data = data;
         this.buyer = buyer;
@@ -45,16 +50,26 @@ public class OrderState implements LinearState, Comparable<OrderState> {
         return seller;
     }
 
-    float getSellingPrice() {
+    long getSellingPrice() {
         return sellingPrice;
     }
 
-    float getDownPayments() {
+    int getDownPayments() {
         return downPayments;
     }
 
     String getState() { return state; }
 
+    // What the buyer pays the seller when placing the order.
+    long getDeposit() {
+        return Money.share(sellingPrice, downPayments);
+    }
+
+    // What the buyer still owes the seller on delivery, deposit and balance always add up to the price.
+    long getBalancePayment() {
+        return sellingPrice - getDeposit();
+    }
+
     @Override
     @NotNull
     public UniqueIdentifier getLinearId() {
@@ -68,6 +83,27 @@ public class OrderState implements LinearState, Comparable<OrderState> {
         return ImmutableList.of(buyer, seller);
     }
 
+    @NotNull
+    @Override
+    public PersistentState generateMappedObject(@NotNull MappedSchema schema) {
+        if (schema instanceof OrderSchemaV1) {
+            return new OrderSchemaV1.PersistentOrder(
+                    this.linearId.getExternalId(),
+                    this.buyer.getName().toString(),
+                    this.seller.getName().toString(),
+                    this.state,
+                    this.linearId.getId());
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return ImmutableList.of(new OrderSchemaV1());
+    }
+
     // Can implement additional functions as well.
     @Override
     public int compareTo(@NotNull OrderState other) {
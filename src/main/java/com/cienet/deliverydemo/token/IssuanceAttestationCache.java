@@ -0,0 +1,55 @@
+package com.cienet.deliverydemo.token;
+
+import com.cienet.deliverydemo.oracle.Oracle;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the oracle's answer to the issuance query per oracle for a bounded time, so issuances in
+ * {@link IssuanceOracleMode#CACHED} mode skip the query round-trip.
+ *
+ * The time to live is the deliverydemo.token.issue.oracleCacheSeconds system property (default 300).
+ */
+@CordaService
+public class IssuanceAttestationCache extends SingletonSerializeAsToken {
+    static final String TTL_SECONDS = "deliverydemo.token.issue.oracleCacheSeconds";
+
+    private final AppServiceHub services;
+    private final Duration ttl = Duration.ofSeconds(Long.getLong(TTL_SECONDS, 300));
+    private final Map<Party, Attestation> attestations = new ConcurrentHashMap<>();
+
+    public IssuanceAttestationCache(AppServiceHub services) {
+        this.services = services;
+    }
+
+    Oracle.PuzzleOracle.IntVal get(Party oracle, int query) {
+        Attestation attestation = attestations.get(oracle);
+        if (attestation == null
+                || attestation.answer.getOf() != query
+                || services.getClock().instant().isAfter(attestation.expiresAt)) {
+            return null;
+        }
+        return attestation.answer;
+    }
+
+    void put(Party oracle, Oracle.PuzzleOracle.IntVal answer) {
+        attestations.put(oracle, new Attestation(answer, services.getClock().instant().plus(ttl)));
+    }
+
+    private static class Attestation {
+        private final Oracle.PuzzleOracle.IntVal answer;
+        private final Instant expiresAt;
+
+        private Attestation(Oracle.PuzzleOracle.IntVal answer, Instant expiresAt) {
+            this.answer = answer;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.cienet.deliverydemo.token;
+
+/**
+ * How TokenIssueFlow involves the oracle, configured per node with the
+ * deliverydemo.token.issue.oracleMode system property.
+ */
+public enum IssuanceOracleMode {
+    // Query and sign with the oracle for every issuance (default).
+    ALWAYS,
+    // Reuse the oracle's answer while it is fresh, see IssuanceAttestationCache, only signing is a round-trip.
+    CACHED,
+    // Issue without an oracle command at all.
+    SKIP;
+
+    public static final String PROPERTY = "deliverydemo.token.issue.oracleMode";
+
+    static IssuanceOracleMode configured() {
+        return valueOf(System.getProperty(PROPERTY, ALWAYS.name()).trim().toUpperCase());
+    }
+}
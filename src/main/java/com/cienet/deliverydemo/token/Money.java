@@ -0,0 +1,39 @@
+package com.cienet.deliverydemo.token;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point money. Token amounts and order prices are longs counting minor units of the issuer's
+ * token (cents), and rates such as down payments are ints counting basis points, so states stay
+ * compact and contract arithmetic is exact and allocation free. Conversions from decimals are exact,
+ * a value with more digits than the scale is rejected instead of rounded.
+ */
+public final class Money {
+    // Digits after the decimal point of a major unit.
+    public static final int SCALE = 2;
+    // Digits after the decimal point of a rate, in basis points.
+    public static final int BASIS_POINTS_SCALE = 4;
+    public static final int BASIS_POINTS = 10_000;
+
+    private Money() {
+    }
+
+    /** Minor units of a decimal amount, e.g. 12.9 is 1290. */
+    public static long minorUnits(BigDecimal amount) {
+        return amount.movePointRight(SCALE).longValueExact();
+    }
+
+    /** Basis points of a decimal rate, e.g. 0.1 is 1000. */
+    public static int basisPoints(BigDecimal rate) {
+        return rate.movePointRight(BASIS_POINTS_SCALE).intValueExact();
+    }
+
+    /** The share of {@code amount} at {@code basisPoints}, rounded down to a whole minor unit. */
+    public static long share(long amount, int basisPoints) {
+        return Math.multiplyExact(amount, basisPoints) / BASIS_POINTS;
+    }
+
+    public static BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+}
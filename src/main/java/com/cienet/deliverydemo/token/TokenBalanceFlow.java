@@ -0,0 +1,62 @@
+package com.cienet.deliverydemo.token;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Balance queries for RPC clients. The amounts are summed by the database over TokenSchemaV1, so a
+ * client receives one number per issuer instead of every unconsumed TokenState. */
+public class TokenBalanceFlow {
+
+    /* The owner's unconsumed balance of one issuer's tokens, 0 if it holds none. */
+    @StartableByRPC
+    public static class Request extends FlowLogic<Long> {
+        private final Party owner;
+        private final Party issuer;
+
+        public Request(Party owner, Party issuer) {
+            this.owner = owner;
+            this.issuer = issuer;
+        }
+
+        @Suspendable
+        @Override
+        public Long call() throws FlowException {
+            List<Object> sums = getServiceHub().getVaultService()
+                    .queryBy(TokenState.class, TokenQueries.balanceOf(owner, issuer))
+                    .getOtherResults();
+            // SUM over no rows is NULL.
+            return sums.isEmpty() || sums.get(0) == null ? 0L : ((Number) sums.get(0)).longValue();
+        }
+    }
+
+    /* The owner's unconsumed balances by issuer name, issuers it holds nothing of are left out. */
+    @StartableByRPC
+    public static class ByIssuer extends FlowLogic<Map<CordaX500Name, Long>> {
+        private final Party owner;
+
+        public ByIssuer(Party owner) {
+            this.owner = owner;
+        }
+
+        @Suspendable
+        @Override
+        public Map<CordaX500Name, Long> call() throws FlowException {
+            List<Object> rows = getServiceHub().getVaultService()
+                    .queryBy(TokenState.class, TokenQueries.balancesByIssuer(owner))
+                    .getOtherResults();
+            Map<CordaX500Name, Long> balances = new LinkedHashMap<>();
+            for (int i = 0; i + 1 < rows.size(); i += 2) {
+                balances.put(CordaX500Name.parse((String) rows.get(i + 1)), ((Number) rows.get(i)).longValue());
+            }
+            return balances;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.cienet.deliverydemo.token;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.util.*;
+
+/**
+ * In-memory view of the unconsumed TokenStates this node owns: a running balance per issuer and the
+ * states themselves ordered by amount, so coin picking takes O(log n) without a database query. States
+ * an issuer only holds as a participant are left out.
+ *
+ * The index follows the vault's update feed. It is filled from the vault the first time a flow uses
+ * it, inside that flow's database transaction but outside the index's monitor, so the update feed is
+ * not held up by the scan, and states consumed while it fills are not added.
+ * It does not know about soft locks and may briefly lag a commit, so its picks are only candidates
+ * that {@link TokenSelection} still has to reserve.
+ */
+@CordaService
+public class TokenBalanceIndex extends SingletonSerializeAsToken {
+    private final AppServiceHub services;
+    private final Party me;
+
+    // issuer -> holding
+    private final Map<Party, Holding> holdings = new HashMap<>();
+    private final Map<StateRef, StateAndRef<TokenState>> indexed = new HashMap<>();
+    // Held by the flow filling the index, so only one scans the vault.
+    private final Object loading = new Object();
+    private Set<StateRef> consumedWhileLoading = new HashSet<>();
+    private volatile boolean loaded;
+
+    public TokenBalanceIndex(AppServiceHub services) {
+        this.services = services;
+        this.me = services.getMyInfo().getLegalIdentities().get(0);
+        services.getVaultService().getUpdates().subscribe(this::apply);
+    }
+
+    /**
+     * States of one issuer owned by {@code owner} adding up to at least {@code amount}, the smallest
+     * single state that covers it if there is one, otherwise the largest states first. Returns an
+     * empty list if no issuer's balance is enough, or if {@code owner} is not this node.
+     */
+    List<StateAndRef<TokenState>> pick(Party owner, long amount) {
+        if (!owner.equals(me)) {
+            return Collections.emptyList();
+        }
+        load();
+        synchronized (this) {
+            Map.Entry<Long, Map<StateRef, StateAndRef<TokenState>>> single = null;
+            Holding sufficient = null;
+            for (Holding holding : holdings.values()) {
+                // The smallest covering state across all issuers.
+                Map.Entry<Long, Map<StateRef, StateAndRef<TokenState>>> ceiling = holding.byAmount.ceilingEntry(amount);
+                if (ceiling != null && (single == null || ceiling.getKey() < single.getKey())) {
+                    single = ceiling;
+                }
+                if (sufficient == null && holding.balance >= amount) {
+                    sufficient = holding;
+                }
+            }
+            if (single != null) {
+                return Collections.singletonList(single.getValue().values().iterator().next());
+            }
+            if (sufficient == null) {
+                return Collections.emptyList();
+            }
+
+            List<StateAndRef<TokenState>> picked = new ArrayList<>();
+            long sum = 0;
+            for (Map<StateRef, StateAndRef<TokenState>> sameAmount : sufficient.byAmount.descendingMap().values()) {
+                for (StateAndRef<TokenState> state : sameAmount.values()) {
+                    picked.add(state);
+                    sum = Math.addExact(sum, state.getState().getData().getAmount());
+                    if (sum >= amount) {
+                        return picked;
+                    }
+                }
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loading) {
+            if (loaded) {
+                return;
+            }
+            List<StateAndRef<TokenState>> states = new ArrayList<>();
+            for (StateAndRef<TokenState> state : VaultScan.scan(services, TokenState.class,
+                    TokenQueries.ownedBy(me), TokenQueries.BY_AMOUNT, VaultScan.DEFAULT_PAGE_SIZE)) {
+                states.add(state);
+            }
+            synchronized (this) {
+                for (StateAndRef<TokenState> state : states) {
+                    if (!consumedWhileLoading.contains(state.getRef())) {
+                        add(state);
+                    }
+                }
+                consumedWhileLoading = null;
+                loaded = true;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void apply(Vault.Update<ContractState> update) {
+        for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+            if (consumed.getState().getData() instanceof TokenState) {
+                remove(consumed.getRef());
+                if (!loaded) {
+                    consumedWhileLoading.add(consumed.getRef());
+                }
+            }
+        }
+        for (StateAndRef<ContractState> produced : update.getProduced()) {
+            ContractState state = produced.getState().getData();
+            if (state instanceof TokenState && ((TokenState) state).getOwner().equals(me)) {
+                add((StateAndRef<TokenState>) (StateAndRef<?>) produced);
+            }
+        }
+    }
+
+    private void add(StateAndRef<TokenState> state) {
+        if (indexed.containsKey(state.getRef())) {
+            return;
+        }
+        TokenState tokenState = state.getState().getData();
+        Holding holding = holdings.computeIfAbsent(tokenState.getIssuer(), it -> new Holding());
+        // Before anything is changed, so an overflow leaves the index as it was.
+        holding.balance = Math.addExact(holding.balance, tokenState.getAmount());
+        indexed.put(state.getRef(), state);
+        holding.byAmount.computeIfAbsent(tokenState.getAmount(), it -> new LinkedHashMap<>()).put(state.getRef(), state);
+    }
+
+    private void remove(StateRef ref) {
+        StateAndRef<TokenState> state = indexed.remove(ref);
+        if (state == null) {
+            return;
+        }
+        TokenState tokenState = state.getState().getData();
+        Holding holding = holdings.get(tokenState.getIssuer());
+        holding.balance -= tokenState.getAmount();
+        Map<StateRef, StateAndRef<TokenState>> sameAmount = holding.byAmount.get(tokenState.getAmount());
+        sameAmount.remove(ref);
+        if (sameAmount.isEmpty()) {
+            holding.byAmount.remove(tokenState.getAmount());
+        }
+        if (holding.byAmount.isEmpty()) {
+            holdings.remove(tokenState.getIssuer());
+        }
+    }
+
+    // Our states of one issuer.
+    private static class Holding {
+        private long balance;
+        private final TreeMap<Long, Map<StateRef, StateAndRef<TokenState>>> byAmount = new TreeMap<>();
+    }
+}
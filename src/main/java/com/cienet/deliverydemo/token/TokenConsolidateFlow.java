@@ -0,0 +1,148 @@
+package com.cienet.deliverydemo.token;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.contracts.CommandData;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TokenConsolidateFlow {
+    /* Unites our own TokenStates of one issuer once there are more than `threshold` of them.
+     * The smallest states are merged first, at most `batchSize` inputs per transaction and
+     * `maxBatches` transactions per run, so a single run stays bounded however fragmented the vault is. */
+    @StartableByRPC
+    @StartableByService
+    public static class Request extends FlowLogic<List<SignedTransaction>> {
+        private static final int PAGE_SIZE = 200;
+
+        private final int threshold;
+        private final int batchSize;
+        private final int maxBatches;
+
+        private final ProgressTracker.Step COUNTING_TOKENS = new ProgressTracker.Step("Counting our token states per issuer.");
+        private final ProgressTracker.Step UNITING_TOKENS = new ProgressTracker.Step("Uniting token states.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                COUNTING_TOKENS,
+                UNITING_TOKENS
+        );
+
+        public Request(int threshold, int batchSize, int maxBatches) {
+            this.threshold = threshold;
+            this.batchSize = batchSize;
+            this.maxBatches = maxBatches;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            if (batchSize < 2) {
+                throw new FlowException("Batch size must be at least 2.");
+            }
+            Party me = getOurIdentity();
+
+            progressTracker.setCurrentStep(COUNTING_TOKENS);
+            List<StateAndRef<TokenState>> candidates = findCandidates(me);
+            if (candidates.isEmpty()) {
+                return new ArrayList<>();
+            }
+            // Keep concurrent order payments away from the states we are about to unite.
+            List<StateRef> candidateRefs = candidates.stream().map(StateAndRef::getRef).collect(Collectors.toList());
+            try {
+                getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.copyOf(candidateRefs));
+            } catch (StatesNotAvailableException e) {
+                getLogger().info("Token states are in use, uniting them next time.");
+                return new ArrayList<>();
+            }
+
+            progressTracker.setCurrentStep(UNITING_TOKENS);
+            List<SignedTransaction> transactions = new ArrayList<>();
+            List<StateAndRef<TokenState>> batch = new ArrayList<>();
+            long batchAmount = 0;
+            for (StateAndRef<TokenState> candidate : candidates) {
+                long amount = candidate.getState().getData().getAmount();
+                if (batch.size() == batchSize || batchAmount > Long.MAX_VALUE - amount) {
+                    if (batch.size() >= 2) {
+                        transactions.add(unite(batch, batchAmount));
+                    }
+                    batch = new ArrayList<>();
+                    batchAmount = 0;
+                }
+                batch.add(candidate);
+                batchAmount += amount;
+            }
+            if (batch.size() >= 2) {
+                transactions.add(unite(batch, batchAmount));
+            }
+            return transactions;
+        }
+
+        // Scans our states grouped by issuer and returns the smallest ones of the first issuer over the threshold.
+        private List<StateAndRef<TokenState>> findCandidates(Party me) {
+            int limit = batchSize * maxBatches;
+            Party currentIssuer = null;
+            int count = 0;
+            List<StateAndRef<TokenState>> smallest = new ArrayList<>();
+
+            for (StateAndRef<TokenState> state : VaultScan.scan(getServiceHub(), TokenState.class,
+                    TokenQueries.unlockedOwnedBy(me, getRunId().getUuid()), TokenQueries.BY_ISSUER_THEN_AMOUNT, PAGE_SIZE)) {
+                Party issuer = state.getState().getData().getIssuer();
+                if (!issuer.equals(currentIssuer)) {
+                    if (count > threshold) {
+                        return smallest;
+                    }
+                    currentIssuer = issuer;
+                    count = 0;
+                    smallest.clear();
+                }
+                count++;
+                if (smallest.size() < limit) {
+                    smallest.add(state);
+                }
+            }
+
+            if (count > threshold) {
+                return smallest;
+            }
+            return new ArrayList<>();
+        }
+
+        @Suspendable
+        private SignedTransaction unite(List<StateAndRef<TokenState>> inputs, long amount) throws FlowException {
+            Party notary = inputs.get(0).getState().getNotary();
+            TokenState first = inputs.get(0).getState().getData();
+
+            TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
+            inputs.forEach(transactionBuilder::addInputState);
+            transactionBuilder.addOutputState(
+                    new TokenState(first.getIssuer(), first.getOwner(), amount), TokenContract.ID, notary);
+
+            CommandData commandData = new TokenContract.Unite();
+            transactionBuilder.addCommand(commandData, first.getOwner().getOwningKey());
+
+            transactionBuilder.verify(getServiceHub());
+            SignedTransaction signedTx = getServiceHub().signInitialTransaction(transactionBuilder);
+            return subFlow(new FinalityFlow(signedTx));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.cienet.deliverydemo.token;
+
+import kotlin.Unit;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically starts {@link TokenConsolidateFlow.Request} so a long-running node keeps the number of
+ * its unconsumed TokenStates per issuer bounded.
+ *
+ * Configured per node with system properties:
+ *  - deliverydemo.token.consolidate.periodSeconds, 0 disables the timer (default 600)
+ *  - deliverydemo.token.consolidate.threshold, states per issuer before uniting (default 20)
+ *  - deliverydemo.token.consolidate.batchSize, inputs per transaction (default 50)
+ *  - deliverydemo.token.consolidate.maxBatches, transactions per run (default 4)
+ */
+@CordaService
+public class TokenConsolidateService extends SingletonSerializeAsToken {
+    static final String PERIOD_SECONDS = "deliverydemo.token.consolidate.periodSeconds";
+    static final String THRESHOLD = "deliverydemo.token.consolidate.threshold";
+    static final String BATCH_SIZE = "deliverydemo.token.consolidate.batchSize";
+    static final String MAX_BATCHES = "deliverydemo.token.consolidate.maxBatches";
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenConsolidateService.class);
+
+    private final AppServiceHub services;
+    private final int threshold = Integer.getInteger(THRESHOLD, 20);
+    private final int batchSize = Integer.getInteger(BATCH_SIZE, 50);
+    private final int maxBatches = Integer.getInteger(MAX_BATCHES, 4);
+    // Set while a started flow has not finished, so runs never overlap.
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+
+    public TokenConsolidateService(AppServiceHub services) {
+        this.services = services;
+
+        long periodSeconds = Long.getLong(PERIOD_SECONDS, 600);
+        if (periodSeconds > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "token-consolidate");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::consolidate, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        } else {
+            executor = null;
+        }
+        services.registerUnloadHandler(() -> {
+            stop();
+            return Unit.INSTANCE;
+        });
+    }
+
+    /** Stops the timer. A flow already started runs to its end. */
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Starts a run and returns, the timer thread does not wait for the flow.
+    private void consolidate() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            services.startFlow(new TokenConsolidateFlow.Request(threshold, batchSize, maxBatches))
+                    .getReturnValue()
+                    .then(result -> {
+                        running.set(false);
+                        try {
+                            int united = result.get().size();
+                            if (united > 0) {
+                                logger.info("United token states in " + united + " transaction(s).");
+                            }
+                        } catch (Exception e) {
+                            logger.warn("Token consolidation failed.", e);
+                        }
+                        return null;
+                    });
+        } catch (Exception e) {
+            running.set(false);
+            logger.warn("Token consolidation failed to start.", e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.cienet.deliverydemo.token;
 
 import net.corda.core.contracts.*;
+import net.corda.core.identity.Party;
 import net.corda.core.transactions.LedgerTransaction;
 
 import java.security.PublicKey;
@@ -11,97 +12,194 @@ public class TokenContract implements Contract {
 
     @Override
     public void verify(LedgerTransaction tx) throws IllegalArgumentException {
-
-
-        List<Command<Issue>> issueCommand = tx.commandsOfType(Issue.class);
-        List<Command<Pay>> payCommand = tx.commandsOfType(Pay.class);
-        if (issueCommand.size() + payCommand.size() != 1) {
-            throw new IllegalArgumentException("must only 1 command, Issue or Pay.");
+        // Every node and the notary run this for each transaction, so the inputs, outputs and commands
+        // are classified in a single pass each, into arrays sized up front.
+        CommandWithParties<CommandData> tokenCommand = null;
+        int tokenCommandCount = 0;
+        for (CommandWithParties<CommandData> command : tx.getCommands()) {
+            CommandData value = command.getValue();
+            if (value instanceof Issue || value instanceof Pay || value instanceof Unite) {
+                tokenCommand = command;
+                tokenCommandCount++;
+            }
+        }
+        if (tokenCommandCount != 1) {
+            throw new IllegalArgumentException("must only 1 command, Issue, Pay or Unite.");
         }
 
-        issueCommand.forEach( commandWithData -> {
-            if (tx.getInputs().size() != 0) {
-                throw new IllegalArgumentException("must no input.");
+        List<StateAndRef<ContractState>> inputs = tx.getInputs();
+        TokenState[] inputTokenStates = new TokenState[inputs.size()];
+        int inputCount = 0;
+        for (StateAndRef<ContractState> input : inputs) {
+            ContractState state = input.getState().getData();
+            if (state instanceof TokenState) {
+                inputTokenStates[inputCount++] = (TokenState) state;
             }
+        }
 
-            if (tx.getOutputs().size() != 1) {
-                throw new IllegalArgumentException("must only 1 output.");
+        List<TransactionState<ContractState>> outputs = tx.getOutputs();
+        TokenState[] outputTokenStates = new TokenState[outputs.size()];
+        int outputCount = 0;
+        for (TransactionState<ContractState> output : outputs) {
+            ContractState state = output.getData();
+            if (state instanceof TokenState) {
+                outputTokenStates[outputCount++] = (TokenState) state;
             }
+        }
 
-            ContractState outputState = tx.getOutput(0);
-            if (!(outputState instanceof TokenState)) {
-                throw new IllegalArgumentException("OutputState must TokenState.");
-            }
+        List<PublicKey> requiredSigners = tokenCommand.getSigners();
+        CommandData commandData = tokenCommand.getValue();
+        if (commandData instanceof Issue) {
+            verifyIssue(inputs.size(), outputs.size(), outputTokenStates, outputCount, requiredSigners);
+        } else if (commandData instanceof Pay) {
+            verifyPay(inputTokenStates, inputCount, outputTokenStates, outputCount, requiredSigners);
+        } else {
+            verifyUnite(inputTokenStates, inputCount, outputTokenStates, outputCount, requiredSigners);
+        }
+    }
+
+    private static void verifyIssue(int allInputCount, int allOutputCount,
+                                    TokenState[] outputTokenStates, int outputCount,
+                                    List<PublicKey> requiredSigners) {
+        if (allInputCount != 0) {
+            throw new IllegalArgumentException("must no input.");
+        }
+
+        if (allOutputCount == 0) {
+            throw new IllegalArgumentException("must at least 1 output.");
+        }
 
-            TokenState outputTokenState = (TokenState) outputState;
+        if (outputCount != allOutputCount) {
+            throw new IllegalArgumentException("OutputState must TokenState.");
+        }
+
+        for (int i = 0; i < outputCount; i++) {
+            TokenState outputTokenState = outputTokenStates[i];
             if (outputTokenState.getAmount() <= 0) {
                 throw new IllegalArgumentException("amount of outputTokenState must positive.");
             }
 
-            List<PublicKey> requiredSigners = commandWithData.getSigners();
-            PublicKey issuerKey = outputTokenState.getIssuer().getOwningKey();
-            if (!requiredSigners.contains(issuerKey)) {
+            if (!requiredSigners.contains(outputTokenState.getIssuer().getOwningKey())) {
                 throw new IllegalArgumentException("Issue did not sign this.");
             }
-        });
+        }
+    }
+
+    private static void verifyPay(TokenState[] inputTokenStates, int inputCount,
+                                  TokenState[] outputTokenStates, int outputCount,
+                                  List<PublicKey> requiredSigners) {
+        if (inputCount == 0) {
+            throw new IllegalArgumentException("must at least 1 input.");
+        }
+
+        if (outputCount == 0) {
+            throw new IllegalArgumentException("must at least 1 Token output.");
+        }
+
+        requireConservedPerIssuer(inputTokenStates, inputCount, outputTokenStates, outputCount);
+
+        // Collect the distinct input owners, usually just the payer.
+        Party[] inputOwners = new Party[inputCount];
+        int inputOwnerCount = 0;
+        for (int i = 0; i < inputCount; i++) {
+            Party owner = inputTokenStates[i].getOwner();
+            if (indexOf(inputOwners, inputOwnerCount, owner) < 0) {
+                inputOwners[inputOwnerCount++] = owner;
+            }
+        }
+        boolean paysSomeoneElse = false;
+        for (int i = 0; i < outputCount && !paysSomeoneElse; i++) {
+            paysSomeoneElse = indexOf(inputOwners, inputOwnerCount, outputTokenStates[i].getOwner()) < 0;
+        }
+        if (!paysSomeoneElse) {
+            throw new IllegalArgumentException("Owner of In/out put TokenState must be not equal.");
+        }
 
-        payCommand.forEach(commandWithData -> {
-            //input
-            if (tx.inputsOfType(TokenState.class).size() != 1) {
-                //TODO Do not consider TokenState unite for now.
-                throw new IllegalArgumentException("must only 1 input.");
+        for (int i = 0; i < outputCount; i++) {
+            if (!requiredSigners.contains(outputTokenStates[i].getIssuer().getOwningKey())) {
+                throw new IllegalArgumentException("Issue did not sign this.");
             }
+        }
+    }
 
-            ContractState inputState = tx.inputsOfType(TokenState.class).get(0);
-            TokenState inputTokenState = (TokenState) inputState;
-
-            //output
-            List<TokenState> outputTokenStateList = tx.outputsOfType(TokenState.class);
-            if (outputTokenStateList.size() == 1) {
-                TokenState outputTokenState = outputTokenStateList.get(0);
-                if (outputTokenState.getAmount() <= 0) {
-                    throw new IllegalArgumentException("amount of outputTokenState must positive.");
-                }
-
-                if (outputTokenState.getAmount() != inputTokenState.getAmount()) {
-                    throw new IllegalArgumentException("amount of In/out put TokenState must be equal.");
-                }
-
-                if (outputTokenState.getOwner() == inputTokenState.getOwner()) {
-                    throw new IllegalArgumentException("Owner of In/out put TokenState must be not equal.");
-                }
-            } else if (outputTokenStateList.size() == 2) {
-                TokenState outputState_0 = outputTokenStateList.get(0);
-                TokenState outputState_1 = outputTokenStateList.get(1);
-
-                if (inputTokenState.getAmount() != (outputState_0.getAmount() + outputState_1.getAmount())) {
-                    throw new IllegalArgumentException("amount of In/out put TokenState must be equal.");
-                }
-
-                if (outputState_0.getOwner() == outputState_1.getOwner()) {
-                    throw new IllegalArgumentException("Owners of outputs of TokenState must be not equal.");
-                }
-
-//                if (outputState_0.getOwner() != inputTokenState.getOwner()
-//                 && outputState_1.getOwner() != inputTokenState.getOwner()) {
-//                    throw new IllegalArgumentException("One of Owner of outputs of TokenState must be equal with the input.");
-//                }
-
-            } else {
-                throw new IllegalArgumentException("must 1 or 2 Token output.");
+    private static void verifyUnite(TokenState[] inputTokenStates, int inputCount,
+                                    TokenState[] outputTokenStates, int outputCount,
+                                    List<PublicKey> requiredSigners) {
+        if (inputCount < 2) {
+            throw new IllegalArgumentException("must at least 2 inputs.");
+        }
+
+        if (outputCount == 0 || outputCount >= inputCount) {
+            throw new IllegalArgumentException("must fewer Token outputs than inputs.");
+        }
+
+        requireConservedPerIssuer(inputTokenStates, inputCount, outputTokenStates, outputCount);
+
+        // Unite only merges one owner's states, nothing changes hands.
+        Party owner = inputTokenStates[0].getOwner();
+        for (int i = 1; i < inputCount; i++) {
+            if (!inputTokenStates[i].getOwner().equals(owner)) {
+                throw new IllegalArgumentException("Owner of all In/out put TokenState must be equal.");
+            }
+        }
+        for (int i = 0; i < outputCount; i++) {
+            if (!outputTokenStates[i].getOwner().equals(owner)) {
+                throw new IllegalArgumentException("Owner of all In/out put TokenState must be equal.");
             }
+        }
+
+        if (!requiredSigners.contains(owner.getOwningKey())) {
+            throw new IllegalArgumentException("Owner did not sign this.");
+        }
+    }
 
-            outputTokenStateList.forEach(outputState -> {
-                List<PublicKey> requiredSigners = commandWithData.getSigners();
-                PublicKey issuerKey = outputState.getIssuer().getOwningKey();
-                if (!requiredSigners.contains(issuerKey)) {
-                    throw new IllegalArgumentException("Issue did not sign this.");
-                }
-            });
+    // Amounts are conserved per issuer, tokens of different issuers are never interchangeable.
+    // A transaction carries tokens of very few issuers, so the balances are kept in parallel arrays
+    // searched linearly rather than in a map of boxed sums.
+    private static void requireConservedPerIssuer(TokenState[] inputTokenStates, int inputCount,
+                                                  TokenState[] outputTokenStates, int outputCount) {
+        Party[] issuers = new Party[inputCount + outputCount];
+        long[] balances = new long[inputCount + outputCount];
+        int issuerCount = 0;
+        for (int i = 0; i < inputCount; i++) {
+            Party issuer = inputTokenStates[i].getIssuer();
+            int index = indexOf(issuers, issuerCount, issuer);
+            if (index < 0) {
+                index = issuerCount++;
+                issuers[index] = issuer;
+            }
+            balances[index] = Math.addExact(balances[index], inputTokenStates[i].getAmount());
+        }
+        for (int i = 0; i < outputCount; i++) {
+            TokenState outputState = outputTokenStates[i];
+            if (outputState.getAmount() <= 0) {
+                throw new IllegalArgumentException("amount of outputTokenState must positive.");
+            }
+            Party issuer = outputState.getIssuer();
+            int index = indexOf(issuers, issuerCount, issuer);
+            if (index < 0) {
+                index = issuerCount++;
+                issuers[index] = issuer;
+            }
+            balances[index] = Math.subtractExact(balances[index], outputState.getAmount());
+        }
+        for (int i = 0; i < issuerCount; i++) {
+            if (balances[i] != 0) {
+                throw new IllegalArgumentException("amount of In/out put TokenState must be equal for each issuer.");
+            }
+        }
+    }
 
-        });
+    private static int indexOf(Party[] parties, int count, Party party) {
+        for (int i = 0; i < count; i++) {
+            if (parties[i].equals(party)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public static class Issue implements CommandData {}
     public static class Pay implements CommandData {}
+    public static class Unite implements CommandData {}
 }
\ No newline at end of file
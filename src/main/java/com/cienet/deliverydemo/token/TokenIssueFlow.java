@@ -5,6 +5,8 @@ import co.paralleluniverse.fibers.Suspendable;
 import com.cienet.deliverydemo.oracle.Oracle;
 import com.cienet.deliverydemo.oracle.OracleFlow;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import kotlin.Pair;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.CommandData;
 import net.corda.core.crypto.TransactionSignature;
@@ -15,18 +17,21 @@ import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import static com.sun.jmx.mbeanserver.Util.cast;
-
 public class TokenIssueFlow {
+    // The puzzle every issuance asks the oracle to attest.
+    static final int ORACLE_QUERY = 99;
+
     /* Our flow, automating the process of updating the ledger.
      * See src/main/java/examples/IAmAFlowPair.java for an example. */
     @InitiatingFlow
     @StartableByRPC
     public static class Request extends FlowLogic<SignedTransaction> {
         private final Party owner;
-        private final int amount;
+        private final long amount;
 
         private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
         private final ProgressTracker.Step VERIFYING_TRANSACTION = new ProgressTracker.Step("Verifying contract constraints.");
@@ -52,7 +57,7 @@ public class TokenIssueFlow {
                 FINALISING_TRANSACTION
         );
 
-        Request(Party owner, int amount) {
+        Request(Party owner, long amount) {
             this.owner = owner;
             this.amount = amount;
         }
@@ -86,13 +91,13 @@ public class TokenIssueFlow {
             FlowSession ownerFlowSession = initiateFlow(owner);
 
             //Oracle testing
-            Party oracle = getServiceHub().getIdentityService().partiesFromName("Oracle", true)
-                    .stream()
-                    .findFirst()
-                    .orElseThrow(() -> new FlowException("No Oracle found."));
-            int result = subFlow(new OracleFlow.QueryFlow(99, oracle));
-            Oracle.PuzzleOracle.IntVal oracleCmdData = new Oracle.PuzzleOracle.IntVal(99, result);
-            transactionBuilder.addCommand(oracleCmdData, oracle.getOwningKey());
+            IssuanceOracleMode oracleMode = IssuanceOracleMode.configured();
+            Party oracle = null;
+            if (oracleMode != IssuanceOracleMode.SKIP) {
+                oracle = Oracle.find(getServiceHub());
+                Oracle.PuzzleOracle.IntVal oracleCmdData = subFlow(new QueryOracle(oracle, oracleMode, 1)).get(0);
+                transactionBuilder.addCommand(oracleCmdData, oracle.getOwningKey());
+            }
             //Oracle testing end
 
             progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
@@ -102,15 +107,11 @@ public class TokenIssueFlow {
             SignedTransaction partSignedTx = getServiceHub().signInitialTransaction(transactionBuilder);
 
             //Oracle testing
-            //transactionBuilder.toWireTransaction(getServiceHub()).buildFilteredTransaction
-            Command<Oracle.PuzzleOracle.IntVal> oracleCmd = cast (transactionBuilder.commands()
-                    .stream()
-                    .filter(it -> it.getValue() instanceof Oracle.PuzzleOracle.IntVal)
-                    .findAny()
-                    .orElseThrow(() -> new FlowException("Oracle Command in tx not found.")));
-            FilteredTransaction ft = partSignedTx.buildFilteredTransaction( it -> it.getClass().equals(oracleCmd.getClass()) && it.equals(oracleCmd));
-            TransactionSignature oracleTxs = subFlow(new OracleFlow.SignFlow(transactionBuilder, oracle, ft));
-            partSignedTx = partSignedTx.withAdditionalSignature(oracleTxs);
+            if (oracle != null) {
+                FilteredTransaction ft = oracleFilteredTransaction(partSignedTx);
+                TransactionSignature oracleTxs = subFlow(new OracleFlow.SignFlow(transactionBuilder, oracle, ft));
+                partSignedTx = partSignedTx.withAdditionalSignature(oracleTxs);
+            }
             //Oracle testing end
 
             progressTracker.setCurrentStep(GATHERING_SIGS);
@@ -127,6 +128,144 @@ public class TokenIssueFlow {
         }
     }
 
+    /* Issues many TokenStates, at most `maxBatchSize` outputs per transaction, so funding thousands of
+     * owners costs a handful of notarisations instead of one each. Only the issuer signs an issuance,
+     * so no owner session is needed, the owners receive their states from FinalityFlow. */
+    @StartableByRPC
+    public static class BatchRequest extends FlowLogic<List<SignedTransaction>> {
+        static final String MAX_BATCH_SIZE = "deliverydemo.token.issue.maxBatchSize";
+
+        private final List<Pair<Party, Long>> issuances;
+        private final int maxBatchSize;
+
+        private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transactions.");
+        private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signatures and recording transactions.");
+
+        private final ProgressTracker progressTracker = new ProgressTracker(
+                GENERATING_TRANSACTION,
+                FINALISING_TRANSACTION
+        );
+
+        public BatchRequest(List<Pair<Party, Long>> issuances) {
+            this(issuances, Integer.getInteger(MAX_BATCH_SIZE, 100));
+        }
+
+        public BatchRequest(List<Pair<Party, Long>> issuances, int maxBatchSize) {
+            this.issuances = issuances;
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        @Override
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            if (maxBatchSize <= 0) {
+                throw new FlowException("Max batch size must be positive.");
+            }
+            if (issuances.isEmpty()) {
+                // Nothing to issue, so neither the Oracle nor the notary is asked.
+                return Collections.emptyList();
+            }
+            Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+            Party issuer = getOurIdentity();
+
+            List<List<Pair<Party, Long>>> chunks = Lists.partition(issuances, maxBatchSize);
+
+            //Oracle testing, one query round-trip answers every transaction in the batch
+            IssuanceOracleMode oracleMode = IssuanceOracleMode.configured();
+            Party oracle = null;
+            List<Oracle.PuzzleOracle.IntVal> oracleCmdData = null;
+            if (oracleMode != IssuanceOracleMode.SKIP) {
+                oracle = Oracle.find(getServiceHub());
+                oracleCmdData = subFlow(new QueryOracle(oracle, oracleMode, chunks.size()));
+            }
+            //Oracle testing end
+
+            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            List<SignedTransaction> partSignedTxs = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                List<Pair<Party, Long>> chunk = chunks.get(i);
+                TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
+                for (Pair<Party, Long> issuance : chunk) {
+                    TokenState tokenState = new TokenState(issuer, issuance.getFirst(), issuance.getSecond());
+                    transactionBuilder.addOutputState(tokenState, TokenContract.ID, notary);
+                }
+                transactionBuilder.addCommand(new TokenContract.Issue(), issuer.getOwningKey());
+                if (oracle != null) {
+                    transactionBuilder.addCommand(oracleCmdData.get(i), oracle.getOwningKey());
+                }
+
+                transactionBuilder.verify(getServiceHub());
+                partSignedTxs.add(getServiceHub().signInitialTransaction(transactionBuilder));
+            }
+
+            //Oracle testing, one session signs every transaction in the batch
+            if (oracle != null) {
+                List<FilteredTransaction> fts = new ArrayList<>();
+                partSignedTxs.forEach(partSignedTx -> fts.add(oracleFilteredTransaction(partSignedTx)));
+                List<TransactionSignature> oracleTxs = subFlow(new OracleFlow.BatchSignFlow(oracle, fts));
+                for (int i = 0; i < partSignedTxs.size(); i++) {
+                    partSignedTxs.set(i, partSignedTxs.get(i).withAdditionalSignature(oracleTxs.get(i)));
+                }
+            }
+            //Oracle testing end
+
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            List<SignedTransaction> finalisedTxs = new ArrayList<>();
+            for (SignedTransaction partSignedTx : partSignedTxs) {
+                finalisedTxs.add(subFlow(new FinalityFlow(partSignedTx)));
+            }
+            return finalisedTxs;
+        }
+    }
+
+    /* Obtains the oracle's answer to the issuance query for each of `transactions` transactions, several
+     * of them in one BatchQueryFlow round-trip. In CACHED mode a fresh answer from the node's
+     * IssuanceAttestationCache is reused, so only the signing round-trip is left. */
+    public static class QueryOracle extends FlowLogic<List<Oracle.PuzzleOracle.IntVal>> {
+        private final Party oracle;
+        private final IssuanceOracleMode oracleMode;
+        private final int transactions;
+
+        QueryOracle(Party oracle, IssuanceOracleMode oracleMode, int transactions) {
+            this.oracle = oracle;
+            this.oracleMode = oracleMode;
+            this.transactions = transactions;
+        }
+
+        @Suspendable
+        @Override
+        public List<Oracle.PuzzleOracle.IntVal> call() throws FlowException {
+            IssuanceAttestationCache cache = getServiceHub().cordaService(IssuanceAttestationCache.class);
+            if (oracleMode == IssuanceOracleMode.CACHED) {
+                Oracle.PuzzleOracle.IntVal cached = cache.get(oracle, ORACLE_QUERY);
+                if (cached != null) {
+                    return Collections.nCopies(transactions, cached);
+                }
+            }
+
+            List<Integer> results = transactions == 1
+                    ? ImmutableList.of(subFlow(new OracleFlow.QueryFlow(ORACLE_QUERY, oracle)))
+                    : subFlow(new OracleFlow.BatchQueryFlow(Collections.nCopies(transactions, ORACLE_QUERY), oracle));
+            List<Oracle.PuzzleOracle.IntVal> answers = new ArrayList<>();
+            results.forEach(result -> answers.add(new Oracle.PuzzleOracle.IntVal(ORACLE_QUERY, result)));
+            if (oracleMode == IssuanceOracleMode.CACHED && !answers.isEmpty()) {
+                cache.put(oracle, answers.get(0));
+            }
+            return answers;
+        }
+    }
+
+    // Only the oracle's command is revealed to the oracle.
+    static FilteredTransaction oracleFilteredTransaction(SignedTransaction partSignedTx) {
+        return partSignedTx.buildFilteredTransaction(it ->
+                it instanceof Command && ((Command) it).getValue() instanceof Oracle.PuzzleOracle.IntVal);
+    }
+
     @InitiatedBy(Request.class)
     public static class Confirm extends FlowLogic<SignedTransaction> {
 
@@ -0,0 +1,103 @@
+package com.cienet.deliverydemo.token;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.cienet.deliverydemo.flows.ParallelSignaturesFlow;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+public class TokenPaySignFlow {
+    /* Collects the token issuer's signature over a Pay transaction in a session of its own, so the
+     * issuer runs a dedicated responder that only co-signs and never has to look into its vault.
+     * The caller's other counterparties are asked without waiting for it, see ParallelSignaturesFlow. */
+    @InitiatingFlow
+    public static class Request extends FlowLogic<SignedTransaction> {
+        private final SignedTransaction partSignedTx;
+        private final Party issuer;
+        private final List<FlowSession> otherPartySessions;
+
+        public Request(SignedTransaction partSignedTx, Party issuer, List<FlowSession> otherPartySessions) {
+            this.partSignedTx = partSignedTx;
+            this.issuer = issuer;
+            this.otherPartySessions = otherPartySessions;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            List<FlowSession> sessions = new ArrayList<>(otherPartySessions);
+            // We or one of the other parties may be the issuer, and already sign with its key.
+            boolean issuerSigns = issuer.equals(getOurIdentity())
+                    || otherPartySessions.stream().anyMatch(session -> session.getCounterparty().equals(issuer));
+            if (!issuerSigns) {
+                sessions.add(initiateFlow(issuer));
+            }
+            return subFlow(new ParallelSignaturesFlow(partSignedTx, sessions));
+        }
+    }
+
+    @InitiatedBy(Request.class)
+    public static class Confirm extends FlowLogic<SignedTransaction> {
+
+        private final FlowSession otherPartyFlow;
+
+        public Confirm(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            Party me = getOurIdentity();
+
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                // Our signature only moves tokens we issued between their owners, it never issues or
+                // destroys any, and signs nothing else.
+                @Override
+                protected void checkTransaction(SignedTransaction stx) throws FlowException {
+                    LedgerTransaction ltx = stx.getTx().toLedgerTransaction(getServiceHub());
+                    long spent = 0;
+                    for (TokenState tokenState : ltx.inputsOfType(TokenState.class)) {
+                        if (tokenState.getIssuer().equals(me)) {
+                            spent = Math.addExact(spent, tokenState.getAmount());
+                        }
+                    }
+                    long paid = 0;
+                    for (TokenState tokenState : ltx.outputsOfType(TokenState.class)) {
+                        if (tokenState.getIssuer().equals(me)) {
+                            paid = Math.addExact(paid, tokenState.getAmount());
+                        }
+                    }
+                    final long spentTotal = spent;
+                    final long paidTotal = paid;
+
+                    requireThat(require -> {
+                        require.using("Must have a Pay command.",
+                                ltx.getCommands().stream()
+                                        .anyMatch(command -> command.getValue() instanceof TokenContract.Pay));
+                        require.using("Must only ask us to sign a Pay command.",
+                                ltx.getCommands().stream()
+                                        .filter(command -> command.getSigners().contains(me.getOwningKey()))
+                                        .allMatch(command -> command.getValue() instanceof TokenContract.Pay));
+                        require.using("Must pay with TokenStates we issued.", spentTotal > 0);
+                        require.using("TokenStates we issued must be paid in full.", paidTotal == spentTotal);
+                        return null;
+                    });
+                }
+            }
+
+            return subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+        }
+    }
+}
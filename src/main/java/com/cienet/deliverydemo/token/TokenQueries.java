@@ -0,0 +1,99 @@
+package com.cienet.deliverydemo.token;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+
+import java.lang.reflect.Field;
+import java.util.UUID;
+
+/**
+ * Vault query criteria over {@link TokenSchemaV1}, so owner and amount predicates run in the database
+ * instead of filtering every unconsumed TokenState on the heap.
+ */
+public class TokenQueries {
+    // Smallest states first, so the first match is the tightest fit for the requested amount.
+    public static final Sort BY_AMOUNT = new Sort(ImmutableList.of(
+            new Sort.SortColumn(
+                    new SortAttribute.Custom(TokenSchemaV1.PersistentToken.class, "amount"),
+                    Sort.Direction.ASC)));
+
+    // Largest states first, so a payment gathers as few inputs as possible.
+    public static final Sort BY_AMOUNT_DESC = new Sort(ImmutableList.of(
+            new Sort.SortColumn(
+                    new SortAttribute.Custom(TokenSchemaV1.PersistentToken.class, "amount"),
+                    Sort.Direction.DESC)));
+
+    // Each issuer's states together, smallest first, so consolidation can count and batch them in one scan.
+    public static final Sort BY_ISSUER_THEN_AMOUNT = new Sort(ImmutableList.of(
+            new Sort.SortColumn(
+                    new SortAttribute.Custom(TokenSchemaV1.PersistentToken.class, "issuer"),
+                    Sort.Direction.ASC),
+            new Sort.SortColumn(
+                    new SortAttribute.Custom(TokenSchemaV1.PersistentToken.class, "amount"),
+                    Sort.Direction.ASC)));
+
+    private TokenQueries() {
+    }
+
+    public static QueryCriteria ownedBy(Party owner) {
+        return ownedBy(new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED), owner);
+    }
+
+    public static QueryCriteria ownedBy(Party owner, long minAmount) {
+        return ownedBy(owner).and(atLeast(minAmount));
+    }
+
+    /**
+     * Like {@link #ownedBy(Party)}, but skips states soft locked by other flows. States already
+     * reserved under {@code lockId} are still returned, so a flow can re-run its own selection.
+     */
+    public static QueryCriteria unlockedOwnedBy(Party owner, UUID lockId) {
+        QueryCriteria.SoftLockingCondition softLockingCondition = new QueryCriteria.SoftLockingCondition(
+                QueryCriteria.SoftLockingType.UNLOCKED_AND_SPECIFIED, ImmutableList.of(lockId));
+        return ownedBy(new QueryCriteria.VaultQueryCriteria(
+                Vault.StateStatus.UNCONSUMED, null, null, null, softLockingCondition), owner);
+    }
+
+    public static QueryCriteria unlockedOwnedBy(Party owner, long minAmount, UUID lockId) {
+        return unlockedOwnedBy(owner, lockId).and(atLeast(minAmount));
+    }
+
+    /** The sum of the owner's unconsumed amounts of one issuer, as a single aggregate row. */
+    public static QueryCriteria balanceOf(Party owner, Party issuer) {
+        QueryCriteria sumCriteria = new QueryCriteria.VaultCustomQueryCriteria(Builder.sum(field("amount")));
+        QueryCriteria issuerCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(field("issuer"), issuer.getName().toString()));
+        return ownedBy(owner).and(issuerCriteria).and(sumCriteria);
+    }
+
+    /** The sum of the owner's unconsumed amounts grouped by issuer, as (sum, issuer name) pairs. */
+    public static QueryCriteria balancesByIssuer(Party owner) {
+        QueryCriteria sumCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.sum(field("amount"), ImmutableList.of(field("issuer"))));
+        return ownedBy(owner).and(sumCriteria);
+    }
+
+    private static QueryCriteria ownedBy(QueryCriteria generalCriteria, Party owner) {
+        QueryCriteria ownerCriteria = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.equal(field("owner"), owner.getName().toString()));
+        return generalCriteria.and(ownerCriteria);
+    }
+
+    private static QueryCriteria atLeast(long minAmount) {
+        return new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.greaterThanOrEqual(field("amount"), minAmount));
+    }
+
+    private static Field field(String name) {
+        try {
+            return TokenSchemaV1.PersistentToken.class.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("No such column in TokenSchemaV1: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.cienet.deliverydemo.token;
+
+/**
+ * The family of schemas for TokenState.
+ */
+public class TokenSchema {
+}
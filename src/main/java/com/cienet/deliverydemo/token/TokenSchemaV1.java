@@ -0,0 +1,58 @@
+package com.cienet.deliverydemo.token;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A TokenState schema.
+ */
+public class TokenSchemaV1 extends MappedSchema {
+    public TokenSchemaV1() {
+        super(TokenSchema.class, 1, ImmutableList.of(PersistentToken.class));
+    }
+
+    @Entity
+    @Table(name = "token_states", indexes = {
+            @Index(name = "token_issuer_idx", columnList = "issuer"),
+            @Index(name = "token_owner_amount_idx", columnList = "owner,amount")
+    })
+    public static class PersistentToken extends PersistentState {
+        @Column(name = "issuer")
+        private final String issuer;
+
+        @Column(name = "owner")
+        private final String owner;
+
+        @Column(name = "amount")
+        private final long amount;
+
+        public PersistentToken(String issuer, String owner, long amount) {
+            this.issuer = issuer;
+            this.owner = owner;
+            this.amount = amount;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentToken() {
+            this("", "", 0);
+        }
+
+        public String getIssuer() {
+            return issuer;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.cienet.deliverydemo.token;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Coin selection for TokenState payments.
+ *
+ * A single state covering the whole amount is preferred. Otherwise the owner's states are gathered
+ * largest first, per issuer, until one issuer's states add up to the amount, so a payment spends as
+ * few inputs as possible and the balance is never rejected just because it is split across states.
+ */
+public class TokenSelection {
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_RETRIES = 3;
+
+    private TokenSelection() {
+    }
+
+    /**
+     * Selects and soft locks the states under {@code lockId}, normally the calling flow's run id so the
+     * lock is released when the flow ends. States locked by other flows are skipped, so concurrent
+     * payments from one owner pick disjoint states instead of conflicting at the notary.
+     *
+     * The node's {@link TokenBalanceIndex} is asked first. It does not see soft locks, so if another flow
+     * holds one of its picks, or it finds no cover, the selection falls back to the vault.
+     */
+    public static List<StateAndRef<TokenState>> select(ServiceHub serviceHub, Party owner, long amount, UUID lockId)
+            throws FlowException {
+        List<StateAndRef<TokenState>> indexed = serviceHub.cordaService(TokenBalanceIndex.class).pick(owner, amount);
+        if (!indexed.isEmpty()) {
+            List<StateRef> stateRefs = indexed.stream().map(StateAndRef::getRef).collect(Collectors.toList());
+            try {
+                serviceHub.getVaultService().softLockReserve(lockId, NonEmptySet.copyOf(stateRefs));
+                return indexed;
+            } catch (StatesNotAvailableException e) {
+                // Locked by another flow, or consumed by a transaction the index has not seen yet.
+            }
+        }
+
+        for (int retry = 0; ; retry++) {
+            List<StateAndRef<TokenState>> selected = selectUnlocked(serviceHub, owner, amount, lockId);
+            List<StateRef> stateRefs = selected.stream().map(StateAndRef::getRef).collect(Collectors.toList());
+            try {
+                serviceHub.getVaultService().softLockReserve(lockId, NonEmptySet.copyOf(stateRefs));
+                return selected;
+            } catch (StatesNotAvailableException e) {
+                // Another flow reserved one of them between our query and our reservation.
+                if (retry == MAX_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static List<StateAndRef<TokenState>> selectUnlocked(ServiceHub serviceHub, Party owner, long amount,
+                                                                UUID lockId) throws FlowException {
+        Vault.Page<TokenState> single = serviceHub.getVaultService().queryBy(
+                TokenState.class,
+                TokenQueries.unlockedOwnedBy(owner, amount, lockId),
+                new PageSpecification(DEFAULT_PAGE_NUM, 1),
+                TokenQueries.BY_AMOUNT);
+        if (!single.getStates().isEmpty()) {
+            return ImmutableList.of(single.getStates().get(0));
+        }
+
+        Map<Party, List<StateAndRef<TokenState>>> selectedByIssuer = new HashMap<>();
+        Map<Party, Long> sumByIssuer = new HashMap<>();
+        for (StateAndRef<TokenState> state : VaultScan.scan(serviceHub, TokenState.class,
+                TokenQueries.unlockedOwnedBy(owner, lockId), TokenQueries.BY_AMOUNT_DESC, PAGE_SIZE)) {
+            Party issuer = state.getState().getData().getIssuer();
+            selectedByIssuer.computeIfAbsent(issuer, it -> new ArrayList<>()).add(state);
+            long sum = sumByIssuer.merge(issuer, state.getState().getData().getAmount(), Math::addExact);
+            if (sum >= amount) {
+                return selectedByIssuer.get(issuer);
+            }
+        }
+
+        throw new FlowException("The buyer has no enough amount.");
+    }
+
+    /**
+     * Adds the selected inputs, one output paying {@code amount} to {@code payee} and, if anything is
+     * left over, one change output back to the owner of the inputs.
+     */
+    public static void generatePayment(TransactionBuilder transactionBuilder,
+                                       List<StateAndRef<TokenState>> inputs,
+                                       Party payee, long amount, Party notary) {
+        generatePayments(transactionBuilder, inputs, ImmutableMap.of(payee, amount), notary);
+    }
+
+    /**
+     * Adds the selected inputs, one output per payee and, if anything is left over, one change output
+     * back to the owner of the inputs. Payees owed nothing get no output.
+     */
+    public static void generatePayments(TransactionBuilder transactionBuilder,
+                                        List<StateAndRef<TokenState>> inputs,
+                                        Map<Party, Long> amountByPayee, Party notary) {
+        TokenState first = inputs.get(0).getState().getData();
+        long total = 0;
+        for (StateAndRef<TokenState> input : inputs) {
+            transactionBuilder.addInputState(input);
+            total = Math.addExact(total, input.getState().getData().getAmount());
+        }
+
+        for (Map.Entry<Party, Long> payment : amountByPayee.entrySet()) {
+            if (payment.getValue() > 0) {
+                transactionBuilder.addOutputState(
+                        new TokenState(first.getIssuer(), payment.getKey(), payment.getValue()), TokenContract.ID, notary);
+                total -= payment.getValue();
+            }
+        }
+        if (total > 0) {
+            //Add for a change
+            transactionBuilder.addOutputState(
+                    new TokenState(first.getIssuer(), first.getOwner(), total),
+                    TokenContract.ID, notary);
+        }
+    }
+}
@@ -1,20 +1,23 @@
 package com.cienet.deliverydemo.token;
 
 import com.google.common.collect.ImmutableList;
-import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
 
 
-public class TokenState implements ContractState {
+public class TokenState implements QueryableState {
     private Party issuer;
     private Party owner;
-    private int amount;
+    // In minor units, see Money.
+    private long amount;
 
-    public TokenState(Party issuer, Party owner, int amount) {
+    public TokenState(Party issuer, Party owner, long amount) {
         this.issuer = issuer;
         this.owner = owner;
         this.amount = amount;
@@ -28,7 +31,7 @@ public class TokenState implements ContractState {
         return owner;
     }
 
-    public int getAmount() {
+    public long getAmount() {
         return amount;
     }
 
@@ -38,4 +41,23 @@ public class TokenState implements ContractState {
     public List<AbstractParty> getParticipants() {
         return ImmutableList.of(issuer, owner);
     }
-}
\ No newline at end of file
+
+    @NotNull
+    @Override
+    public PersistentState generateMappedObject(@NotNull MappedSchema schema) {
+        if (schema instanceof TokenSchemaV1) {
+            return new TokenSchemaV1.PersistentToken(
+                    this.issuer.getName().toString(),
+                    this.owner.getName().toString(),
+                    this.amount);
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return ImmutableList.of(new TokenSchemaV1());
+    }
+}
@@ -0,0 +1,105 @@
+package com.cienet.deliverydemo.token;
+
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Paged vault reads. The states matching a query are read one page at a time, in the given order,
+ * and the next page is only queried once the caller has gone through the current one, so a lookup
+ * that stops early touches only the rows it needs and at most one page is held in memory.
+ *
+ * Queries run in the caller's thread and never suspend, so a scan can be used inside a flow as long
+ * as it is finished before the flow's next send, receive or subFlow.
+ */
+public class VaultScan {
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    private VaultScan() {
+    }
+
+    public static <T extends ContractState> Iterable<StateAndRef<T>> scan(
+            ServiceHub serviceHub, Class<T> stateType, QueryCriteria criteria, Sort sort, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        return () -> new PageIterator<>(serviceHub, stateType, criteria, sort, pageSize);
+    }
+
+    /**
+     * Passes the states to {@code visitor} in order until it returns false or the states run out.
+     * Returns true if the visitor stopped the scan.
+     */
+    public static <T extends ContractState> boolean scanWhile(
+            ServiceHub serviceHub, Class<T> stateType, QueryCriteria criteria, Sort sort, int pageSize,
+            Predicate<StateAndRef<T>> visitor) {
+        for (StateAndRef<T> state : scan(serviceHub, stateType, criteria, sort, pageSize)) {
+            if (!visitor.test(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class PageIterator<T extends ContractState> implements Iterator<StateAndRef<T>> {
+        private final ServiceHub serviceHub;
+        private final Class<T> stateType;
+        private final QueryCriteria criteria;
+        private final Sort sort;
+        private final int pageSize;
+
+        private int pageNumber = DEFAULT_PAGE_NUM;
+        private List<StateAndRef<T>> page;
+        private int index;
+        private long fetched;
+        private long totalStatesAvailable = -1;
+
+        PageIterator(ServiceHub serviceHub, Class<T> stateType, QueryCriteria criteria, Sort sort, int pageSize) {
+            this.serviceHub = serviceHub;
+            this.stateType = stateType;
+            this.criteria = criteria;
+            this.sort = sort;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (page == null || (index == page.size() && hasNextPage())) {
+                Vault.Page<T> results = serviceHub.getVaultService().queryBy(
+                        stateType, criteria, new PageSpecification(pageNumber++, pageSize), sort);
+                page = results.getStates();
+                totalStatesAvailable = results.getTotalStatesAvailable();
+                fetched += page.size();
+                index = 0;
+            }
+            return index < page.size();
+        }
+
+        // The vault rejects a page past the last one, so stop at the reported total when there is one.
+        private boolean hasNextPage() {
+            if (page.size() < pageSize) {
+                return false;
+            }
+            return totalStatesAvailable < 0 || fetched < totalStatesAvailable;
+        }
+
+        @Override
+        public StateAndRef<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.cienet.deliverydemo.flows
+
+import co.paralleluniverse.fibers.Suspendable
+import net.corda.core.crypto.TransactionSignature
+import net.corda.core.flows.FlowException
+import net.corda.core.flows.FlowLogic
+import net.corda.core.flows.FlowSession
+import net.corda.core.flows.SendTransactionFlow
+import net.corda.core.transactions.SignedTransaction
+import net.corda.core.utilities.unwrap
+import java.security.GeneralSecurityException
+
+/**
+ * Collects signatures from several counterparties running SignTransactionFlow, like
+ * CollectSignaturesFlow, but without waiting for one counterparty's signature before asking the next.
+ *
+ * Each counterparty resolves the transaction's dependencies through a SendTransactionFlow of ours, and
+ * a flow serves those one at a time, so resolution stays sequential. What overlaps is the rest of each
+ * counterparty's work, verifying the transaction, running its checks and signing, which happens while
+ * we serve the next counterparty. The collected signatures get the same checks as in
+ * CollectSignaturesFlow.
+ */
+class ParallelSignaturesFlow(private val partSignedTx: SignedTransaction,
+                             private val sessions: List<FlowSession>) : FlowLogic<SignedTransaction>() {
+    @Suspendable
+    override fun call(): SignedTransaction {
+        val requiredKeys = partSignedTx.tx.requiredSigningKeys
+        for (session in sessions) {
+            val key = session.counterparty.owningKey
+            if (key !in requiredKeys) throw FlowException("${session.counterparty} is not a required signer.")
+            subFlow(SendTransactionFlow(session, partSignedTx))
+            session.send(listOf(key))
+        }
+
+        val signatures = sessions.flatMap { session ->
+            session.receive<List<TransactionSignature>>().unwrap { sigs ->
+                if (sigs.isEmpty() || sigs.any { it.by != session.counterparty.owningKey })
+                    throw FlowException("Not signed by the required signing key.")
+                val valid = try {
+                    sigs.all { it.verify(partSignedTx.id) }
+                } catch (e: GeneralSecurityException) {
+                    false
+                }
+                if (!valid) throw FlowException("Invalid signature from ${session.counterparty}.")
+                sigs
+            }
+        }
+
+        val stx = partSignedTx.withAdditionalSignatures(signatures)
+        // Everyone but the notary must have signed now.
+        stx.verifySignaturesExcept(listOfNotNull(stx.notary?.owningKey))
+        return stx
+    }
+}
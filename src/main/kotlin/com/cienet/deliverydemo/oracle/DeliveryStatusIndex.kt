@@ -0,0 +1,136 @@
+package com.cienet.deliverydemo.oracle
+
+import java.io.Closeable
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.UUID
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * Order linear id -> status code, in an open addressing hash table inside a memory-mapped file, so
+ * tens of millions of shipments cost the operating system's page cache instead of the node's heap, and
+ * survive a restart together with the cursor of the source they were read from.
+ *
+ * Layout: a 16 byte header (slot count, source cursor), then slots of 17 bytes (id high bits, id low
+ * bits, status code). Code 0 marks an empty slot. The slot count is a power of two fixed when the file
+ * is created; one mapping holds at most [MAX_CAPACITY] slots, keep the load under about 3/4 of them.
+ * Writes are serialised, reads take no lock. A file whose header does not describe a table that fits in
+ * it is refused, rather than probed out of bounds.
+ */
+@ThreadSafe
+class DeliveryStatusIndex(path: Path, capacity: Int) : Closeable {
+    companion object {
+        const val MAX_CAPACITY = 1 shl 26
+        private const val HEADER = 16
+        private const val SLOT = 17
+    }
+
+    private val buffer: MappedByteBuffer
+    private val mask: Int
+    // Written after every put and read before every get, so readers see whole slots.
+    @Volatile private var version = 0L
+    @Volatile private var closed = false
+
+    init {
+        require(capacity in 1..MAX_CAPACITY) { "Capacity must be between 1 and $MAX_CAPACITY." }
+        FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE).use { channel ->
+            // An existing file keeps the slot count it was created with.
+            val slots = if (channel.size() > 0) {
+                check(channel.size() >= HEADER) { "$path is not a delivery status index: too short for its header." }
+                val header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER.toLong())
+                val stored = header.getLong(0)
+                check(stored in 1L..MAX_CAPACITY && (stored and (stored - 1)) == 0L) {
+                    "$path is not a delivery status index: $stored slots is not a power of two up to $MAX_CAPACITY."
+                }
+                check(channel.size() >= HEADER + stored * SLOT) {
+                    "$path is not a delivery status index: ${channel.size()} bytes can not hold $stored slots."
+                }
+                stored.toInt()
+            } else {
+                Integer.highestOneBit(capacity - 1).shl(1).coerceAtLeast(1)
+            }
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + slots.toLong() * SLOT)
+            buffer.putLong(0, slots.toLong())
+            mask = slots - 1
+        }
+    }
+
+    /** Where the source should resume from, persisted with the entries. */
+    var cursor: Long
+        get() = buffer.getLong(8)
+        @Synchronized set(value) {
+            buffer.putLong(8, value)
+        }
+
+    /** The status code of [id], 0 if it has none. */
+    fun get(id: UUID): Byte {
+        check(!closed) { "The delivery status index is closed." }
+        @Suppress("UNUSED_VARIABLE") val seen = version
+        var slot = hash(id) and mask
+        for (probe in 0..mask) {
+            val offset = (HEADER + slot.toLong() * SLOT).toInt()
+            val code = buffer.get(offset + 16)
+            if (code.toInt() == 0) return 0
+            if (buffer.getLong(offset) == id.mostSignificantBits && buffer.getLong(offset + 8) == id.leastSignificantBits) {
+                return code
+            }
+            slot = (slot + 1) and mask
+        }
+        return 0
+    }
+
+    /** Sets the status code of [id], which must not be 0. */
+    @Synchronized
+    fun put(id: UUID, code: Byte) {
+        require(code.toInt() != 0) { "Status code 0 marks an empty slot." }
+        check(!closed) { "The delivery status index is closed." }
+        var slot = hash(id) and mask
+        for (probe in 0..mask) {
+            val offset = (HEADER + slot.toLong() * SLOT).toInt()
+            val existing = buffer.get(offset + 16)
+            if (existing.toInt() == 0) {
+                buffer.putLong(offset, id.mostSignificantBits)
+                buffer.putLong(offset + 8, id.leastSignificantBits)
+                // The code goes last, a reader sees an empty slot until the key is written.
+                buffer.put(offset + 16, code)
+                version++
+                return
+            }
+            if (buffer.getLong(offset) == id.mostSignificantBits && buffer.getLong(offset + 8) == id.leastSignificantBits) {
+                buffer.put(offset + 16, code)
+                version++
+                return
+            }
+            slot = (slot + 1) and mask
+        }
+        throw IllegalStateException("The delivery status index is full, create it with a larger capacity.")
+    }
+
+    /** Writes the entries and the cursor through to the file. */
+    fun force() {
+        buffer.force()
+    }
+
+    /**
+     * Writes everything through and refuses further reads and writes. The mapping itself is released
+     * when the buffer is collected, Java 8 has no public way to unmap it.
+     */
+    @Synchronized
+    override fun close() {
+        if (!closed) {
+            buffer.force()
+            closed = true
+        }
+    }
+
+    // Random UUIDs are already well spread, the mix keeps other ids from clustering.
+    private fun hash(id: UUID): Int {
+        var h = id.mostSignificantBits xor id.leastSignificantBits
+        h = (h xor (h ushr 33)) * -0xae502812aa7333L
+        h = h xor (h ushr 33)
+        return h.toInt()
+    }
+}
@@ -0,0 +1,123 @@
+package com.cienet.deliverydemo.oracle
+
+import java.io.BufferedInputStream
+import java.io.ByteArrayOutputStream
+import java.net.HttpURLConnection
+import java.net.URI
+import java.net.URL
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.sql.DriverManager
+
+/**
+ * Where the delivery oracle reads carrier events from. Events are (order linear id, status) pairs,
+ * oldest first, and a later event for an order replaces the earlier one.
+ */
+interface DeliveryStatusSource {
+    /**
+     * Passes the events after [cursor] to [onEvent] and returns the cursor to resume from. The first
+     * read starts at cursor 0.
+     */
+    fun read(cursor: Long, onEvent: (linearId: String, status: String) -> Unit): Long
+
+    companion object {
+        const val QUERY = "deliverydemo.oracle.delivery.query"
+        const val DEFAULT_QUERY = "SELECT seq, linear_id, status FROM delivery_events WHERE seq > ? ORDER BY seq"
+
+        /** A `jdbc:` url, an `http(s)://` url, or a file as a `file:` url or a plain path. */
+        fun of(location: String): DeliveryStatusSource = when {
+            location.startsWith("jdbc:") -> JdbcSource(location, System.getProperty(QUERY, DEFAULT_QUERY))
+            location.startsWith("http://") || location.startsWith("https://") -> HttpSource(URL(location))
+            location.startsWith("file:") -> FileSource(Paths.get(URI(location)))
+            else -> FileSource(Paths.get(location))
+        }
+    }
+}
+
+// One event per line, `linearId,status`. Blank lines and lines starting with # are skipped.
+private fun parseLine(line: String, onEvent: (String, String) -> Unit) {
+    val trimmed = line.trim()
+    if (trimmed.isEmpty() || trimmed.startsWith("#")) return
+    val fields = trimmed.split(',', limit = 2)
+    if (fields.size == 2) onEvent(fields[0].trim(), fields[1].trim())
+}
+
+/**
+ * An append-only event file. The cursor is the byte offset after the last complete line, so a line
+ * still being written is read on the next refresh. A file shorter than the cursor is read again.
+ */
+class FileSource(private val path: Path) : DeliveryStatusSource {
+    override fun read(cursor: Long, onEvent: (linearId: String, status: String) -> Unit): Long {
+        if (!Files.exists(path)) return cursor
+        FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+            val start = if (channel.size() < cursor) 0 else cursor
+            channel.position(start)
+            val input = BufferedInputStream(Channels.newInputStream(channel))
+            val line = ByteArrayOutputStream()
+            var position = start
+            var consumed = start
+            while (true) {
+                val b = input.read()
+                if (b < 0) break
+                position++
+                if (b == '\n'.toInt()) {
+                    parseLine(line.toString(Charsets.UTF_8.name()), onEvent)
+                    line.reset()
+                    consumed = position
+                } else {
+                    line.write(b)
+                }
+            }
+            return consumed
+        }
+    }
+}
+
+/**
+ * A carrier endpoint, or a stub of one, answering `GET <url>?from=<n>` with the events after the
+ * first n, one `linearId,status` line each. The cursor is the number of events read.
+ */
+class HttpSource(private val url: URL) : DeliveryStatusSource {
+    override fun read(cursor: Long, onEvent: (linearId: String, status: String) -> Unit): Long {
+        val separator = if (url.query == null) "?" else "&"
+        val connection = URL("$url${separator}from=$cursor").openConnection() as HttpURLConnection
+        connection.connectTimeout = 10_000
+        connection.readTimeout = 60_000
+        try {
+            var read = cursor
+            connection.inputStream.bufferedReader().useLines { lines ->
+                lines.forEach { line -> parseLine(line) { linearId, status -> onEvent(linearId, status); read++ } }
+            }
+            return read
+        } finally {
+            connection.disconnect()
+        }
+    }
+}
+
+/**
+ * An embedded or external database reached through JDBC. [query] takes the cursor as its only
+ * parameter and returns (sequence number, order linear id, status) rows in sequence order; the cursor is the
+ * last sequence number read.
+ */
+class JdbcSource(private val url: String, private val query: String) : DeliveryStatusSource {
+    override fun read(cursor: Long, onEvent: (linearId: String, status: String) -> Unit): Long {
+        DriverManager.getConnection(url).use { connection ->
+            connection.prepareStatement(query).use { statement ->
+                statement.setLong(1, cursor)
+                statement.executeQuery().use { rows ->
+                    var last = cursor
+                    while (rows.next()) {
+                        last = rows.getLong(1)
+                        onEvent(rows.getString(2), rows.getString(3))
+                    }
+                    return last
+                }
+            }
+        }
+    }
+}
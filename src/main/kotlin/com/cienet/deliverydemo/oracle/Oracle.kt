@@ -1,17 +1,27 @@
 package com.cienet.deliverydemo.oracle
 
-import co.paralleluniverse.fibers.Suspendable
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheLoader
+import com.google.common.cache.CacheStats
+import com.google.common.cache.LoadingCache
 import net.corda.core.contracts.Command
 import net.corda.core.contracts.CommandData
+import net.corda.core.contracts.UniqueIdentifier
 import net.corda.core.crypto.TransactionSignature
 import net.corda.core.flows.*
-import net.corda.core.internal.ThreadBox
+import net.corda.core.identity.Party
 import net.corda.core.node.AppServiceHub
+import net.corda.core.node.ServiceHub
 import net.corda.core.node.services.CordaService
 import net.corda.core.serialization.SingletonSerializeAsToken
 import net.corda.core.transactions.FilteredTransaction
+import net.corda.core.utilities.loggerFor
+import java.nio.file.Paths
+import java.util.UUID
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
 import javax.annotation.concurrent.ThreadSafe
-import kotlin.collections.HashSet
 
 
 object Oracle {
@@ -22,26 +32,38 @@ object Oracle {
 
         data class IntVal(val of: Int, val value: Int) : CommandData
 
-        private val mutex = ThreadBox(InnerState())
-        private var value = 20
-
-        init {
-            addDefaultValue()
+        companion object {
+            const val CACHE_MAX_SIZE = "deliverydemo.oracle.cache.maxSize"
+            const val CACHE_TTL_SECONDS = "deliverydemo.oracle.cache.ttlSeconds"
         }
 
-        private class InnerState {
-            val values = HashSet<Int>()
-        }
+        // Answers from the data source behind the oracle, bounded in size (least recently used go first) and
+        // in age. The cache is segmented, so concurrent queries and signings do not serialise on one lock.
+        private val answers: LoadingCache<Int, Int> = CacheBuilder.newBuilder()
+                .maximumSize(System.getProperty(CACHE_MAX_SIZE, "100000").toLong())
+                .expireAfterWrite(System.getProperty(CACHE_TTL_SECONDS, "60").toLong(), TimeUnit.SECONDS)
+                .recordStats()
+                .build(object : CacheLoader<Int, Int>() {
+                    override fun load(key: Int): Int = compute(key)
+                })
 
+        // The expensive lookup, only reached on a cache miss.
+        private fun compute(of: Int): Int = of + 10
 
-        @Suspendable
-        fun query(queries: Int): Int {
-            //require(queries.isNotEmpty())
-            return mutex.locked {
-                queries+10
-            }
+        private fun answer(of: Int): Int = answers.getUnchecked(of)
+
+        fun query(queries: Int): Int = answer(queries)
+
+        fun query(queries: List<Int>): List<Int> {
+            val all = answers.getAll(queries)
+            return queries.map { all[it]!! }
         }
 
+        /** Hit, miss and eviction counters of the answer cache. */
+        fun cacheStats(): CacheStats = answers.stats()
+
+        fun sign(ftxs: List<FilteredTransaction>): List<TransactionSignature> = ftxs.map { sign(it) }
+
         fun sign(ftx: FilteredTransaction): TransactionSignature {
             ftx.verify()
             // Performing validation of obtained filtered components.
@@ -50,7 +72,7 @@ object Oracle {
                     "Oracle received unknown command (not in signers or not IntVal)."
                 }
                 val query = elem.value as IntVal
-                if (query.of+10 != query.value)
+                if (answer(query.of) != query.value)
                     throw FlowException("Not match.")
                 return true
             }
@@ -67,9 +89,140 @@ object Oracle {
 
             return services.createSignature(ftx, services.myInfo.legalIdentities.first().owningKey)
         }
+    }
+
+    /** The Oracle node of the network. */
+    @JvmStatic
+    @Throws(FlowException::class)
+    fun find(serviceHub: ServiceHub): Party =
+            serviceHub.identityService.partiesFromName("Oracle", true).firstOrNull()
+                    ?: throw FlowException("No Oracle found.")
+
+    /**
+     * Attests that orders have been delivered, from carrier events read out of a [DeliveryStatusSource].
+     *
+     * Sellers hand their shipments to the carrier under the order's linear id, which the buyer drew at
+     * random when placing the order, so an attestation can not be borrowed from another seller's
+     * order with the same external id. The latest status of every linear id is kept in a
+     * [DeliveryStatusIndex], so signing is one hash probe per order and the index lives off the heap.
+     * Configured with system properties:
+     *  - deliverydemo.oracle.delivery.source, see [DeliveryStatusSource.of]; unset, nothing is attested
+     *  - deliverydemo.oracle.delivery.indexFile, the index file (default delivery-status.idx)
+     *  - deliverydemo.oracle.delivery.capacity, slots of a new index file (default 1048576)
+     *  - deliverydemo.oracle.delivery.refreshSeconds, how often new events are read, 0 disables it (default 30)
+     */
+    @ThreadSafe
+    @CordaService
+    class DeliveryOracle(private val services: AppServiceHub) : SingletonSerializeAsToken() {
+
+        data class Delivered(val linearIds: List<UniqueIdentifier>) : CommandData
+
+        // Stored as ordinal + 1, 0 is an unknown order.
+        enum class DeliveryStatus { IN_TRANSIT, DELIVERED, RETURNED }
+
+        companion object {
+            const val SOURCE = "deliverydemo.oracle.delivery.source"
+            const val INDEX_FILE = "deliverydemo.oracle.delivery.indexFile"
+            const val CAPACITY = "deliverydemo.oracle.delivery.capacity"
+            const val REFRESH_SECONDS = "deliverydemo.oracle.delivery.refreshSeconds"
+
+            private val logger = loggerFor<DeliveryOracle>()
+        }
+
+        // Every node runs this service, only a node with a source opens an index.
+        private val source: DeliveryStatusSource? = System.getProperty(SOURCE)?.let { DeliveryStatusSource.of(it) }
+        private val index: DeliveryStatusIndex? = source?.let {
+            DeliveryStatusIndex(
+                    Paths.get(System.getProperty(INDEX_FILE, "delivery-status.idx")),
+                    System.getProperty(CAPACITY, "1048576").toInt())
+        }
+
+        private val executor: ScheduledExecutorService? = System.getProperty(REFRESH_SECONDS, "30").toLong().let { refreshSeconds ->
+            if (source == null || refreshSeconds <= 0) return@let null
+            Executors.newSingleThreadScheduledExecutor { runnable ->
+                Thread(runnable, "delivery-oracle-refresh").apply { isDaemon = true }
+            }.apply {
+                scheduleWithFixedDelay({
+                    try {
+                        refresh()
+                    } catch (e: Exception) {
+                        logger.warn("Could not read delivery events.", e)
+                    }
+                }, 0, refreshSeconds, TimeUnit.SECONDS)
+            }
+        }
+
+        init {
+            services.registerUnloadHandler { stop() }
+        }
+
+        // Stops reading events and closes the index, once a refresh in progress is done.
+        private fun stop() {
+            executor?.shutdownNow()
+            synchronized(this) {
+                index?.close()
+            }
+        }
+
+        /** Reads the events added to the source since the last refresh, and returns how many were applied. */
+        @Synchronized
+        fun refresh(): Int {
+            val source = source ?: return 0
+            val index = index!!
+            var applied = 0
+            val cursor = source.read(index.cursor) { linearId, status ->
+                val id = try {
+                    UUID.fromString(linearId)
+                } catch (e: IllegalArgumentException) {
+                    null
+                }
+                val parsed = DeliveryStatus.values().firstOrNull { it.name.equals(status, ignoreCase = true) }
+                if (id == null || parsed == null) {
+                    logger.warn("Skipping delivery event $linearId,$status.")
+                } else {
+                    index.put(id, (parsed.ordinal + 1).toByte())
+                    applied++
+                }
+            }
+            // Events are applied in order and the latest one wins, so events applied again after a
+            // crash before the cursor is stored do no harm.
+            index.force()
+            index.cursor = cursor
+            index.force()
+            return applied
+        }
+
+        /** The latest known status of an order, null if no carrier event mentions it. */
+        fun status(linearId: UUID): DeliveryStatus? {
+            val code = index?.get(linearId)?.toInt() ?: 0
+            return if (code == 0) null else DeliveryStatus.values()[code - 1]
+        }
+
+        fun sign(ftx: FilteredTransaction): TransactionSignature {
+            ftx.verify()
+            val ourKey = services.myInfo.legalIdentities.first().owningKey
+            // Performing validation of obtained filtered components.
+            fun commandValidator(elem: Command<*>): Boolean {
+                require(ourKey in elem.signers && elem.value is Delivered) {
+                    "Oracle received unknown command (not in signers or not Delivered)."
+                }
+                val undelivered = (elem.value as Delivered).linearIds.filter { status(it.id) != DeliveryStatus.DELIVERED }
+                if (undelivered.isNotEmpty())
+                    throw FlowException("Not delivered: " + undelivered.joinToString(","))
+                return true
+            }
+
+            fun check(elem: Any): Boolean {
+                return when (elem) {
+                    is Command<*> -> commandValidator(elem)
+                    else -> throw IllegalArgumentException("Oracle received data of different type than expected.")
+                }
+            }
+
+            require(ftx.checkWithFun(::check))
+            ftx.checkCommandVisibility(ourKey)
 
-        private fun addDefaultValue() {
-            this.value = 10
+            return services.createSignature(ftx, ourKey)
         }
     }
-}
\ No newline at end of file
+}
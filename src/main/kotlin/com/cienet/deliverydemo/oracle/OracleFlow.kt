@@ -51,9 +51,45 @@ object OracleFlow{
         }
     }
 
+    @InitiatingFlow
+    class BatchQueryFlow(val of: List<Int>, val oracle: Party) : FlowLogic<List<Int>>() {
+        @Suspendable
+        override fun call(): List<Int> {
+            val oracleSession = initiateFlow(oracle)
+            val resp = oracleSession.sendAndReceive<List<Int>>(of)
+
+            return resp.unwrap {
+                // One answer for each query, in order.
+                check(it.size == of.size)
+                it
+            }
+        }
+    }
+
+    @InitiatedBy(BatchQueryFlow::class)
+    class BatchQueryHandler(private val otherPartySession: FlowSession) : FlowLogic<Unit>() {
+        object RECEIVED : ProgressTracker.Step("Received batch fix request")
+        object SENDING : ProgressTracker.Step("Sending batch fix response")
+
+        override val progressTracker = ProgressTracker(RECEIVED, SENDING)
+
+        @Suspendable
+        override fun call() {
+            val request = otherPartySession.receive<List<Int>>().unwrap { it }
+            progressTracker.currentStep = RECEIVED
+            val oracle = serviceHub.cordaService(Oracle.PuzzleOracle::class.java)
+            val answers = oracle.query(request)
+            progressTracker.currentStep = SENDING
+            otherPartySession.send(answers)
+        }
+    }
+
     @CordaSerializable
     data class SignRequest(val ftx: FilteredTransaction)
 
+    @CordaSerializable
+    data class BatchSignRequest(val ftxs: List<FilteredTransaction>)
+
     @InitiatingFlow
     class SignFlow(private val tx: TransactionBuilder,
                    private val oracle: Party,
@@ -81,4 +117,60 @@ object OracleFlow{
         }
     }
 
-}
\ No newline at end of file
+    @InitiatingFlow
+    class BatchSignFlow(private val oracle: Party,
+                        private val partialMerkleTxs: List<FilteredTransaction>) : FlowLogic<List<TransactionSignature>>() {
+        @Suspendable
+        override fun call(): List<TransactionSignature> {
+            val oracleSession = initiateFlow(oracle)
+            val resp =
+                    oracleSession.sendAndReceive<List<TransactionSignature>>(BatchSignRequest(partialMerkleTxs))
+            return resp.unwrap { sigs ->
+                // One signature for each filtered transaction, in order.
+                check(sigs.size == partialMerkleTxs.size)
+                sigs.zip(partialMerkleTxs).forEach { (sig, ftx) ->
+                    check(oracleSession.counterparty.owningKey.isFulfilledBy(listOf(sig.by)))
+                    sig.verify(ftx.id)
+                }
+                sigs
+            }
+        }
+    }
+
+    @InitiatedBy(BatchSignFlow::class)
+    class BatchSignHandler(private val otherPartySession: FlowSession) : FlowLogic<Unit>() {
+        @Suspendable
+        override fun call() {
+            val request = otherPartySession.receive<BatchSignRequest>().unwrap { it }
+            val oracle = serviceHub.cordaService(Oracle.PuzzleOracle::class.java)
+            otherPartySession.send(oracle.sign(request.ftxs))
+        }
+    }
+
+    @InitiatingFlow
+    class DeliverySignFlow(private val oracle: Party,
+                           private val partialMerkleTx: FilteredTransaction) : FlowLogic<TransactionSignature>() {
+        @Suspendable
+        override fun call(): TransactionSignature {
+            val oracleSession = initiateFlow(oracle)
+            val resp =
+                    oracleSession.sendAndReceive<TransactionSignature>(SignRequest(partialMerkleTx))
+            return resp.unwrap { sig ->
+                check(oracleSession.counterparty.owningKey.isFulfilledBy(listOf(sig.by)))
+                sig.verify(partialMerkleTx.id)
+                sig
+            }
+        }
+    }
+
+    @InitiatedBy(DeliverySignFlow::class)
+    class DeliverySignHandler(private val otherPartySession: FlowSession) : FlowLogic<Unit>() {
+        @Suspendable
+        override fun call() {
+            val request = otherPartySession.receive<SignRequest>().unwrap { it }
+            val oracle = serviceHub.cordaService(Oracle.DeliveryOracle::class.java)
+            otherPartySession.send(oracle.sign(request.ftx))
+        }
+    }
+
+}
@@ -5,27 +5,26 @@ import com.cienet.deliverydemo.token.TokenState
 import net.corda.core.contracts.StateAndRef
 import net.corda.core.flows.FlowSession
 import net.corda.core.identity.Party
+import net.corda.core.serialization.CordaSerializable
 import net.corda.core.utilities.unwrap
 
+/**
+ * Asks for token states of [owner] covering [amount], in one message.
+ */
+@CordaSerializable
+data class TokenRequest(val amount: Long, val owner: Party)
 
 class TokenAsk(private val otherPartyFlow: FlowSession) {
 
     @Suspendable
-    fun askTokenState(amount: Int, owner: Party): StateAndRef<TokenState> {
-        otherPartyFlow.send(amount)
-        otherPartyFlow.send(owner)
-        return otherPartyFlow.receive<StateAndRef<TokenState>>().unwrap { it }
-    }
+    fun askTokenStates(amount: Long, owner: Party): List<StateAndRef<TokenState>> =
+            otherPartyFlow.sendAndReceive<List<StateAndRef<TokenState>>>(TokenRequest(amount, owner)).unwrap { it }
 
     @Suspendable
-    fun receiveAmount(): Int =
-        otherPartyFlow.receive<Int>().unwrap{it}
+    fun receiveRequest(): TokenRequest =
+            otherPartyFlow.receive<TokenRequest>().unwrap { it }
 
     @Suspendable
-    fun receiveOwner(): Party =
-            otherPartyFlow.receive<Party>().unwrap{it}
-
-    @Suspendable
-    fun sendStateAndRef(tokenStateAndRef: StateAndRef<TokenState>) =
-        otherPartyFlow.send(tokenStateAndRef)
-}
\ No newline at end of file
+    fun sendStateAndRefs(tokenStateAndRefs: List<StateAndRef<TokenState>>) =
+        otherPartyFlow.send(tokenStateAndRefs)
+}
@@ -0,0 +1,215 @@
+package com.cienet.deliverydemo.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.crypto.SignableData;
+import net.corda.core.crypto.SignatureMetadata;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Latency of signature collection on the mock network, counted in message rounds: in every round
+ * each node handles one pending message, so the rounds until a flow finishes follow its critical path.
+ */
+public class ParallelSignaturesFlowTests {
+    private MockNetwork network;
+    private StartedMockNode nodeA;
+    private List<Party> counterparties;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"));
+        nodeA = network.createPartyNode(null);
+        counterparties = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            counterparties.add(network.createPartyNode(null).getInfo().getLegalIdentities().get(0));
+        }
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void parallelCollectionFinishesInFewerRoundsThanSequentialCollection() throws Exception {
+        CordaFuture<SignedTransaction> sequential = nodeA.startFlow(new SequentialSigning(counterparties));
+        int sequentialRounds = roundsUntilDone(sequential);
+        CordaFuture<SignedTransaction> parallel = nodeA.startFlow(new ParallelSigning(counterparties));
+        int parallelRounds = roundsUntilDone(parallel);
+
+        assertEquals(counterparties.size() + 1, sequential.get().getSigs().size());
+        assertEquals(counterparties.size() + 1, parallel.get().getSigs().size());
+        assertTrue(parallelRounds < sequentialRounds);
+    }
+
+    @Test
+    public void aSignatureOverAnotherTransactionIsRejected() throws Exception {
+        CordaFuture<SignedTransaction> future = nodeA.startFlow(new ForgedSigning(counterparties.subList(0, 1)));
+        network.runNetwork();
+        try {
+            future.get();
+            throw new AssertionError("The forged signature was accepted.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+    }
+
+    private int roundsUntilDone(CordaFuture<?> future) {
+        int rounds = 0;
+        while (!future.isDone() && rounds < 10_000) {
+            network.runNetwork(1);
+            rounds++;
+        }
+        return rounds;
+    }
+
+    // Every counterparty issues one token to us, so each of them has to sign.
+    private static SignedTransaction issuance(FlowLogic<?> flow, List<Party> issuers) {
+        Party me = flow.getOurIdentity();
+        Party notary = flow.getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
+        issuers.forEach(issuer -> transactionBuilder.addOutputState(new TokenState(issuer, me, 1), TokenContract.ID, notary));
+        List<PublicKey> signers = issuers.stream().map(Party::getOwningKey).collect(Collectors.toList());
+        signers.add(me.getOwningKey());
+        transactionBuilder.addCommand(new TokenContract.Issue(), signers);
+        return flow.getServiceHub().signInitialTransaction(transactionBuilder);
+    }
+
+    @InitiatingFlow
+    public static class SequentialSigning extends FlowLogic<SignedTransaction> {
+        private final List<Party> issuers;
+
+        public SequentialSigning(List<Party> issuers) {
+            this.issuers = issuers;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            List<FlowSession> sessions = new ArrayList<>();
+            issuers.forEach(issuer -> sessions.add(initiateFlow(issuer)));
+            return subFlow(new CollectSignaturesFlow(
+                    issuance(this, issuers), sessions, CollectSignaturesFlow.Companion.tracker()));
+        }
+    }
+
+    @InitiatingFlow
+    public static class ParallelSigning extends FlowLogic<SignedTransaction> {
+        private final List<Party> issuers;
+
+        public ParallelSigning(List<Party> issuers) {
+            this.issuers = issuers;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            List<FlowSession> sessions = new ArrayList<>();
+            issuers.forEach(issuer -> sessions.add(initiateFlow(issuer)));
+            return subFlow(new ParallelSignaturesFlow(issuance(this, issuers), sessions));
+        }
+    }
+
+    @InitiatingFlow
+    public static class ForgedSigning extends FlowLogic<SignedTransaction> {
+        private final List<Party> issuers;
+
+        public ForgedSigning(List<Party> issuers) {
+            this.issuers = issuers;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            List<FlowSession> sessions = new ArrayList<>();
+            issuers.forEach(issuer -> sessions.add(initiateFlow(issuer)));
+            return subFlow(new ParallelSignaturesFlow(issuance(this, issuers), sessions));
+        }
+    }
+
+    // Follows the SignTransactionFlow protocol, but signs some other transaction id with the right key.
+    @InitiatedBy(ForgedSigning.class)
+    public static class ForgedSigner extends FlowLogic<Void> {
+        private final FlowSession otherPartyFlow;
+
+        public ForgedSigner(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            subFlow(new ReceiveTransactionFlow(otherPartyFlow, false));
+            otherPartyFlow.receive(List.class);
+            PublicKey key = getOurIdentity().getOwningKey();
+            SignableData signableData = new SignableData(SecureHash.randomSHA256(), new SignatureMetadata(
+                    getServiceHub().getMyInfo().getPlatformVersion(),
+                    Crypto.findSignatureScheme(key).getSchemeNumberID()));
+            otherPartyFlow.send(ImmutableList.of(getServiceHub().getKeyManagementService().sign(signableData, key)));
+            return null;
+        }
+    }
+
+    @InitiatedBy(SequentialSigning.class)
+    public static class SequentialSigner extends Signer {
+        public SequentialSigner(FlowSession otherPartyFlow) {
+            super(otherPartyFlow);
+        }
+    }
+
+    @InitiatedBy(ParallelSigning.class)
+    public static class ParallelSigner extends Signer {
+        public ParallelSigner(FlowSession otherPartyFlow) {
+            super(otherPartyFlow);
+        }
+    }
+
+    public static class Signer extends FlowLogic<SignedTransaction> {
+        private final FlowSession otherPartyFlow;
+
+        public Signer(FlowSession otherPartyFlow) {
+            this.otherPartyFlow = otherPartyFlow;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
+                    super(otherPartyFlow, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(SignedTransaction stx) {
+
+                }
+            }
+
+            return subFlow(new SignTxFlow(otherPartyFlow, SignTransactionFlow.Companion.tracker()));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.cienet.deliverydemo.oracle;
+
+import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.Command;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.FilteredTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchSignFlowTests {
+    private MockNetwork network;
+    private StartedMockNode bank;
+    private StartedMockNode oracleNode;
+    private Party oracle;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"));
+        bank = network.createPartyNode(null);
+        oracleNode = network.createPartyNode(new CordaX500Name("Oracle", "Lagos", "NG"));
+        network.runNetwork();
+        oracle = oracleNode.getInfo().getLegalIdentities().get(0);
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void oneRequestReturnsAVerifiedSignaturePerFilteredTransaction() throws Exception {
+        List<FilteredTransaction> ftxs = new ArrayList<>();
+        for (int of = 1; of <= 3; of++) {
+            ftxs.add(filteredIssuance(new Oracle.PuzzleOracle.IntVal(of, of + 10)));
+        }
+
+        CordaFuture<List<TransactionSignature>> signed = bank.startFlow(new OracleFlow.BatchSignFlow(oracle, ftxs));
+        network.runNetwork();
+        List<TransactionSignature> sigs = signed.get();
+
+        assertEquals(ftxs.size(), sigs.size());
+        for (int i = 0; i < ftxs.size(); i++) {
+            assertEquals(oracle.getOwningKey(), sigs.get(i).getBy());
+            assertTrue(sigs.get(i).isValid(ftxs.get(i).getId()));
+        }
+    }
+
+    @Test
+    public void aWrongAnswerInTheBatchIsRejected() throws Exception {
+        List<FilteredTransaction> ftxs = ImmutableList.of(
+                filteredIssuance(new Oracle.PuzzleOracle.IntVal(1, 11)),
+                filteredIssuance(new Oracle.PuzzleOracle.IntVal(2, 13)));
+
+        CordaFuture<List<TransactionSignature>> signed = bank.startFlow(new OracleFlow.BatchSignFlow(oracle, ftxs));
+        network.runNetwork();
+        try {
+            signed.get();
+            throw new AssertionError("The Oracle must not sign 2 + 10 = 13.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+    }
+
+    @Test
+    public void oneBatchQueryAnswersEveryQueryInOrder() throws Exception {
+        Oracle.PuzzleOracle puzzleOracle = oracleNode.getServices().cordaService(Oracle.PuzzleOracle.class);
+        long lookupsBefore = puzzleOracle.cacheStats().requestCount();
+
+        CordaFuture<List<Integer>> answers = bank.startFlow(new OracleFlow.BatchQueryFlow(ImmutableList.of(1, 2, 3, 2), oracle));
+        network.runNetwork();
+
+        assertEquals(ImmutableList.of(11, 12, 13, 12), answers.get());
+        // A single lookup of the distinct queries.
+        assertEquals(3, puzzleOracle.cacheStats().requestCount() - lookupsBefore);
+    }
+
+    // An issuance by the bank carrying the Oracle's command, with only that command revealed.
+    private FilteredTransaction filteredIssuance(Oracle.PuzzleOracle.IntVal answer) {
+        Party issuer = bank.getInfo().getLegalIdentities().get(0);
+        Party notary = network.getDefaultNotaryIdentity();
+        return bank.transaction(() -> {
+            TransactionBuilder transactionBuilder = new TransactionBuilder(notary);
+            transactionBuilder.addOutputState(new TokenState(issuer, issuer, 100), TokenContract.ID, notary);
+            transactionBuilder.addCommand(new TokenContract.Issue(), issuer.getOwningKey());
+            transactionBuilder.addCommand(answer, oracle.getOwningKey());
+            return transactionBuilder.toWireTransaction(bank.getServices()).buildFilteredTransaction(it ->
+                    it instanceof Command && ((Command) it).getValue() instanceof Oracle.PuzzleOracle.IntVal);
+        });
+    }
+}
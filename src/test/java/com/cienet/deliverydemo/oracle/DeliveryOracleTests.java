@@ -0,0 +1,258 @@
+package com.cienet.deliverydemo.oracle;
+
+import com.cienet.deliverydemo.order.OrderDeliveredFlow;
+import com.cienet.deliverydemo.order.OrderPlaceFlow;
+import com.cienet.deliverydemo.order.OrderState;
+import com.cienet.deliverydemo.token.IssuanceOracleMode;
+import com.cienet.deliverydemo.token.TokenIssueFlow;
+import com.google.common.collect.ImmutableList;
+import kotlin.Pair;
+import kotlin.Unit;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeliveryOracleTests {
+    private Path events;
+    private Path indexFile;
+    private MockNetwork network;
+    private StartedMockNode bank;
+    private StartedMockNode buyer;
+    private StartedMockNode seller;
+    private StartedMockNode otherSeller;
+    private StartedMockNode oracleNode;
+
+    @Before
+    public void setup() throws Exception {
+        events = Files.createTempFile("delivery-events", ".csv");
+        System.setProperty(IssuanceOracleMode.PROPERTY, IssuanceOracleMode.SKIP.name());
+        System.setProperty(OrderDeliveredFlow.ORACLE_MODE, "ALWAYS");
+        indexFile = Files.createTempFile("delivery-status", ".idx");
+        Files.delete(indexFile);
+        System.setProperty(Oracle.DeliveryOracle.SOURCE, events.toString());
+        System.setProperty(Oracle.DeliveryOracle.INDEX_FILE, indexFile.toString());
+        // Refreshed by the tests, not by a timer.
+        System.setProperty(Oracle.DeliveryOracle.REFRESH_SECONDS, "0");
+        network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"));
+        bank = network.createPartyNode(null);
+        buyer = network.createPartyNode(null);
+        seller = network.createPartyNode(null);
+        otherSeller = network.createPartyNode(null);
+        oracleNode = network.createPartyNode(new CordaX500Name("Oracle", "Lagos", "NG"));
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        network.stopNodes();
+        System.clearProperty(IssuanceOracleMode.PROPERTY);
+        System.clearProperty(OrderDeliveredFlow.ORACLE_MODE);
+        System.clearProperty(Oracle.DeliveryOracle.SOURCE);
+        System.clearProperty(Oracle.DeliveryOracle.INDEX_FILE);
+        System.clearProperty(Oracle.DeliveryOracle.REFRESH_SECONDS);
+        Files.deleteIfExists(events);
+        Files.deleteIfExists(indexFile);
+    }
+
+    @Test
+    public void onlyOrdersTheCarrierDeliveredAreSettled() throws Exception {
+        Party buyerParty = buyer.getInfo().getLegalIdentities().get(0);
+        Party sellerParty = seller.getInfo().getLegalIdentities().get(0);
+        Party otherSellerParty = otherSeller.getInfo().getLegalIdentities().get(0);
+        Party oracle = oracleNode.getInfo().getLegalIdentities().get(0);
+
+        CordaFuture<List<SignedTransaction>> issued = bank.startFlow(
+                new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(buyerParty, 1000L))));
+        network.runNetwork();
+        issued.get();
+        // Two sellers with an order of the same external id.
+        CordaFuture<SignedTransaction> placed = buyer.startFlow(new OrderPlaceFlow.BulkRequest(ImmutableList.of(
+                new OrderPlaceFlow.Item(sellerParty, "parcel_1", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(sellerParty, "parcel_2", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(otherSellerParty, "parcel_2", new BigDecimal("1.00"), new BigDecimal("0.1")))));
+        network.runNetwork();
+        Map<String, UniqueIdentifier> ours = new HashMap<>();
+        UniqueIdentifier theirs = null;
+        for (OrderState order : placed.get().getTx().outputsOfType(OrderState.class)) {
+            if (order.getSeller().equals(sellerParty)) {
+                ours.put(order.getLinearId().getExternalId(), order.getLinearId());
+            } else {
+                theirs = order.getLinearId();
+            }
+        }
+
+        append(ours.get("parcel_1").getId() + ",in_transit\n"
+                + ours.get("parcel_2").getId() + ",IN_TRANSIT\n"
+                + theirs.getId() + ",DELIVERED\n"
+                + ours.get("parcel_1").getId() + ",DELIVERED\n");
+        Oracle.DeliveryOracle deliveryOracle = oracleNode.getServices().cordaService(Oracle.DeliveryOracle.class);
+        assertEquals(4, deliveryOracle.refresh());
+        assertEquals(Oracle.DeliveryOracle.DeliveryStatus.DELIVERED, deliveryOracle.status(ours.get("parcel_1").getId()));
+
+        CordaFuture<SignedTransaction> delivered = seller.startFlow(new OrderDeliveredFlow.Request("parcel_1"));
+        network.runNetwork();
+        SignedTransaction deliverTx = delivered.get();
+        assertTrue(deliverTx.getTx().getCommands().stream().anyMatch(command -> command.getValue().equals(
+                new Oracle.DeliveryOracle.Delivered(ImmutableList.of(ours.get("parcel_1"))))));
+        assertTrue(deliverTx.getSigs().stream().anyMatch(sig -> sig.getBy().equals(oracle.getOwningKey())));
+
+        // The other seller's parcel_2 is delivered, ours is still in transit.
+        CordaFuture<SignedTransaction> undelivered = seller.startFlow(new OrderDeliveredFlow.Request("parcel_2"));
+        network.runNetwork();
+        try {
+            undelivered.get();
+            throw new AssertionError("parcel_2 is still in transit.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FlowException);
+        }
+    }
+
+    @Test
+    public void indexKeepsStatusesAndCursorAcrossReopening() throws Exception {
+        Path file = Files.createTempFile("delivery-status", ".idx");
+        Files.delete(file);
+        try {
+            DeliveryStatusIndex index = new DeliveryStatusIndex(file, 1 << 12);
+            List<UUID> ids = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                UUID id = UUID.randomUUID();
+                ids.add(id);
+                index.put(id, (byte) (i % 3 + 1));
+            }
+            index.put(ids.get(0), (byte) 2);
+            index.setCursor(42);
+            index.force();
+
+            // A different capacity is ignored, the file keeps its own.
+            DeliveryStatusIndex reopened = new DeliveryStatusIndex(file, 16);
+            assertEquals(42, reopened.getCursor());
+            assertEquals(2, reopened.get(ids.get(0)));
+            for (int i = 1; i < ids.size(); i++) {
+                assertEquals(i % 3 + 1, reopened.get(ids.get(i)));
+            }
+            assertEquals(0, reopened.get(UUID.randomUUID()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void aFullIndexRefusesNewIds() throws Exception {
+        Path file = Files.createTempFile("delivery-status", ".idx");
+        Files.delete(file);
+        try {
+            DeliveryStatusIndex index = new DeliveryStatusIndex(file, 4);
+            for (int i = 0; i < 5; i++) {
+                index.put(UUID.randomUUID(), (byte) 1);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void aFileThatIsNoIndexIsRefused() throws Exception {
+        Path file = Files.createTempFile("delivery-status", ".idx");
+        try {
+            // Zeroed, a slot count that is no power of two, and a table cut short.
+            for (byte[] content : ImmutableList.of(new byte[64],
+                    ByteBuffer.allocate(64).putLong(0, 12).array(),
+                    ByteBuffer.allocate(64).putLong(0, 1 << 12).array())) {
+                Files.write(file, content);
+                try {
+                    new DeliveryStatusIndex(file, 16);
+                    throw new AssertionError("Opened a file that is no index.");
+                } catch (IllegalStateException e) {
+                    assertEquals(64, Files.size(file));
+                }
+            }
+
+            Files.delete(file);
+            DeliveryStatusIndex index = new DeliveryStatusIndex(file, 16);
+            index.close();
+            try {
+                index.get(UUID.randomUUID());
+                throw new AssertionError("Read a closed index.");
+            } catch (IllegalStateException e) {
+                // Expected.
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void fileSourceResumesAfterTheLastCompleteLine() throws Exception {
+        DeliveryStatusSource source = DeliveryStatusSource.Companion.of(events.toString());
+        List<String> read = new ArrayList<>();
+
+        append("# carrier events\nparcel_1,IN_TRANSIT\nparcel_2,IN_");
+        long cursor = source.read(0, (orderID, status) -> {
+            read.add(orderID + "=" + status);
+            return Unit.INSTANCE;
+        });
+        append("TRANSIT\nparcel_1,DELIVERED\n");
+        source.read(cursor, (orderID, status) -> {
+            read.add(orderID + "=" + status);
+            return Unit.INSTANCE;
+        });
+
+        assertEquals(ImmutableList.of("parcel_1=IN_TRANSIT", "parcel_2=IN_TRANSIT", "parcel_1=DELIVERED"), read);
+    }
+
+    @Test
+    public void jdbcSourceResumesAfterTheLastSequenceNumber() throws Exception {
+        String url = "jdbc:h2:mem:delivery_events;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE delivery_events (seq BIGINT PRIMARY KEY, linear_id VARCHAR(64), status VARCHAR(16))");
+            statement.execute("INSERT INTO delivery_events VALUES (1, 'parcel_1', 'IN_TRANSIT'), (2, 'parcel_1', 'DELIVERED')");
+
+            DeliveryStatusSource source = DeliveryStatusSource.Companion.of(url);
+            List<String> read = new ArrayList<>();
+            long cursor = source.read(0, (orderID, status) -> {
+                read.add(orderID + "=" + status);
+                return Unit.INSTANCE;
+            });
+            assertEquals(2, cursor);
+
+            statement.execute("INSERT INTO delivery_events VALUES (3, 'parcel_2', 'RETURNED')");
+            assertEquals(3, source.read(cursor, (orderID, status) -> {
+                read.add(orderID + "=" + status);
+                return Unit.INSTANCE;
+            }));
+            assertEquals(ImmutableList.of("parcel_1=IN_TRANSIT", "parcel_1=DELIVERED", "parcel_2=RETURNED"), read);
+        }
+    }
+
+    private void append(String lines) throws Exception {
+        Files.write(events, lines.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,84 @@
+package com.cienet.deliverydemo.oracle;
+
+import com.google.common.collect.ImmutableList;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * PuzzleOracle.query under concurrent callers, the way concurrent QueryHandler flows call it. Its
+ * throughput is measured by PuzzleOracleBenchmark in src/jmh.
+ */
+public class PuzzleOracleConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int QUERIES_PER_THREAD = 10_000;
+    private static final int DISTINCT_QUERIES = 500;
+
+    private MockNetwork network;
+    private StartedMockNode oracleNode;
+
+    @Before
+    public void setup() {
+        network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"));
+        oracleNode = network.createPartyNode(null);
+        network.runNetwork();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void repeatedQueriesAreAnsweredFromTheCache() {
+        Oracle.PuzzleOracle oracle = oracleNode.getServices().cordaService(Oracle.PuzzleOracle.class);
+        long hits = oracle.cacheStats().hitCount();
+        long misses = oracle.cacheStats().missCount();
+
+        assertEquals(-1_000_000 + 10, oracle.query(-1_000_000));
+        assertEquals(ImmutableList.of(-1_000_000 + 10, -999_999 + 10),
+                oracle.query(ImmutableList.of(-1_000_000, -999_999)));
+
+        assertEquals(hits + 1, oracle.cacheStats().hitCount());
+        assertEquals(misses + 2, oracle.cacheStats().missCount());
+    }
+
+    @Test
+    public void concurrentQueriesAreAnsweredCorrectly() throws Exception {
+        Oracle.PuzzleOracle oracle = oracleNode.getServices().cordaService(Oracle.PuzzleOracle.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                // Every thread asks the same queries, so they meet on the same cache entries.
+                futures.add(executor.submit(() -> {
+                    long sum = 0;
+                    for (int i = 0; i < QUERIES_PER_THREAD; i++) {
+                        sum += oracle.query(i % DISTINCT_QUERIES);
+                    }
+                    return sum;
+                }));
+            }
+            long expected = 0;
+            for (int i = 0; i < QUERIES_PER_THREAD; i++) {
+                expected += i % DISTINCT_QUERIES + 10;
+            }
+            for (Future<Long> future : futures) {
+                assertEquals(expected, (long) future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.cienet.deliverydemo.order;
+
+import com.cienet.deliverydemo.token.Money;
+import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenState;
+import com.google.common.collect.ImmutableList;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.dsl.TransactionDSL;
+import net.corda.testing.dsl.TransactionDSLInterpreter;
+import net.corda.testing.node.MockServices;
+import org.junit.Test;
+
+import java.security.PublicKey;
+import java.util.List;
+
+import static net.corda.testing.node.NodeTestUtils.transaction;
+
+public class ContractTests {
+    private final TestIdentity issuer = new TestIdentity(new CordaX500Name("Issuer", "", "GB"));
+    private final TestIdentity buyer = new TestIdentity(new CordaX500Name("Buyer", "", "GB"));
+    private final TestIdentity seller = new TestIdentity(new CordaX500Name("Seller", "", "GB"));
+    private MockServices ledgerServices = new MockServices(new TestIdentity(new CordaX500Name("TestId", "", "GB")));
+
+    private final OrderState firstOrder = order("first_order", 10, OrderContract.SHIPPING);
+    private final OrderState secondOrder = order("second_order", 20, OrderContract.SHIPPING);
+
+    private OrderState order(String orderID, long sellingPrice, String state) {
+        return order(orderID, sellingPrice, 1000, state);
+    }
+
+    private OrderState order(String orderID, long sellingPrice, int downPayments, String state) {
+        return new OrderState("This is an UT order.", buyer.getParty(), seller.getParty(),
+                new UniqueIdentifier(orderID), sellingPrice, downPayments, state);
+    }
+
+    private OrderState delivered(OrderState orderState) {
+        return new OrderState(orderState.getData(), orderState.getBuyer(), orderState.getSeller(),
+                orderState.getLinearId(), orderState.getSellingPrice(), orderState.getDownPayments(),
+                OrderContract.DELIVERED);
+    }
+
+    // Places an order out of a buyer's 30 tokens, paying the seller `paid` of them.
+    private void placing(TransactionDSL<TransactionDSLInterpreter> tx, OrderState orderState, long paid,
+                         List<PublicKey> orderSigners) {
+        tx.input(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 30));
+        tx.output(OrderContract.CONTRACT_ID, orderState);
+        tx.output(TokenContract.ID, new TokenState(issuer.getParty(), seller.getParty(), paid));
+        tx.output(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 30 - paid));
+        tx.command(ImmutableList.of(issuer.getPublicKey(), buyer.getPublicKey(), seller.getPublicKey()),
+                new TokenContract.Pay());
+        tx.command(orderSigners, new OrderContract.Commands.OrderPlacingCommand());
+    }
+
+    @Test
+    public void orderContractPlacesAnOrderPayingItsDeposit() {
+        transaction(ledgerServices, tx -> {
+            // The deposit of 100 at 1000 basis points is 10, 20 is the buyer's change.
+            placing(tx, order("placed_order", 100, OrderContract.SHIPPING), 10,
+                    ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()));
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void orderContractRequiresDownPaymentsWithinBasisPoints() {
+        for (int downPayments : new int[]{-1, Money.BASIS_POINTS + 1}) {
+            transaction(ledgerServices, tx -> {
+                // Out of 0 to 10000 basis points, will fail.
+                placing(tx, order("placed_order", 100, downPayments, OrderContract.SHIPPING), 10,
+                        ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()));
+                tx.failsWith("The down payments must be between 0 and " + Money.BASIS_POINTS + " basis points");
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void orderContractOnlyPlacesShippingOrders() {
+        transaction(ledgerServices, tx -> {
+            // Placed as already delivered, will fail.
+            placing(tx, order("placed_order", 100, OrderContract.DELIVERED), 10,
+                    ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()));
+            tx.failsWith("The state of output OrderState must be shipping.");
+            return null;
+        });
+    }
+
+    @Test
+    public void orderContractRequiresTheDepositToBePaid() {
+        transaction(ledgerServices, tx -> {
+            // The seller is paid 9 of the 10 owed, will fail.
+            placing(tx, order("placed_order", 100, OrderContract.SHIPPING), 9,
+                    ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()));
+            tx.failsWith("The down payment of every placed OrderState must be paid");
+            return null;
+        });
+    }
+
+    @Test
+    public void orderContractRequiresTheBuyerAndTheSellerToSignAPlacement() {
+        for (TestIdentity signer : ImmutableList.of(buyer, seller)) {
+            transaction(ledgerServices, tx -> {
+                // Only one of them signs, will fail.
+                placing(tx, order("placed_order", 100, OrderContract.SHIPPING), 10,
+                        ImmutableList.of(signer.getPublicKey()));
+                tx.failsWith("The buyer and the seller are required signers");
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void orderContractSettlesManyDeliveriesInOneTransaction() {
+        transaction(ledgerServices, tx -> {
+            // Balance payments are 9 and 18, 3 is the buyer's change.
+            tx.input(OrderContract.CONTRACT_ID, firstOrder);
+            tx.input(OrderContract.CONTRACT_ID, secondOrder);
+            tx.input(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 30));
+            tx.output(OrderContract.CONTRACT_ID, delivered(firstOrder));
+            tx.output(OrderContract.CONTRACT_ID, delivered(secondOrder));
+            tx.output(TokenContract.ID, new TokenState(issuer.getParty(), seller.getParty(), 27));
+            tx.output(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 3));
+            tx.command(ImmutableList.of(issuer.getPublicKey(), buyer.getPublicKey(), seller.getPublicKey()),
+                    new TokenContract.Pay());
+            tx.command(ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()),
+                    new OrderContract.Commands.OrderDeliveredCommand());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void orderContractRequiresTheFullBalancePayment() {
+        transaction(ledgerServices, tx -> {
+            // The seller is paid 26 of the 27 owed, will fail.
+            tx.input(OrderContract.CONTRACT_ID, firstOrder);
+            tx.input(OrderContract.CONTRACT_ID, secondOrder);
+            tx.input(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 30));
+            tx.output(OrderContract.CONTRACT_ID, delivered(firstOrder));
+            tx.output(OrderContract.CONTRACT_ID, delivered(secondOrder));
+            tx.output(TokenContract.ID, new TokenState(issuer.getParty(), seller.getParty(), 26));
+            tx.output(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 4));
+            tx.command(ImmutableList.of(issuer.getPublicKey(), buyer.getPublicKey(), seller.getPublicKey()),
+                    new TokenContract.Pay());
+            tx.command(ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()),
+                    new OrderContract.Commands.OrderDeliveredCommand());
+            tx.failsWith("The balance payment of every delivered OrderState must be paid");
+            return null;
+        });
+    }
+
+    @Test
+    public void orderContractOnlyDeliversShippingOrders() {
+        OrderState deliveredOrder = delivered(firstOrder);
+
+        transaction(ledgerServices, tx -> {
+            // The order was already delivered, will fail.
+            tx.input(OrderContract.CONTRACT_ID, deliveredOrder);
+            tx.input(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 9));
+            tx.output(OrderContract.CONTRACT_ID, deliveredOrder);
+            tx.output(TokenContract.ID, new TokenState(issuer.getParty(), seller.getParty(), 9));
+            tx.command(ImmutableList.of(issuer.getPublicKey(), buyer.getPublicKey(), seller.getPublicKey()),
+                    new TokenContract.Pay());
+            tx.command(ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()),
+                    new OrderContract.Commands.OrderDeliveredCommand());
+            tx.failsWith("The state of input OrderState must be shipping.");
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // The order is left shipping, will fail.
+            tx.input(OrderContract.CONTRACT_ID, firstOrder);
+            tx.input(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 9));
+            tx.output(OrderContract.CONTRACT_ID, firstOrder);
+            tx.output(TokenContract.ID, new TokenState(issuer.getParty(), seller.getParty(), 9));
+            tx.command(ImmutableList.of(issuer.getPublicKey(), buyer.getPublicKey(), seller.getPublicKey()),
+                    new TokenContract.Pay());
+            tx.command(ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()),
+                    new OrderContract.Commands.OrderDeliveredCommand());
+            tx.failsWith("The state of output OrderState must be delivered.");
+            return null;
+        });
+    }
+
+    @Test
+    public void orderContractRequiresEveryShippingOrderToBeDelivered() {
+        transaction(ledgerServices, tx -> {
+            // The second order is consumed without being delivered, will fail.
+            tx.input(OrderContract.CONTRACT_ID, firstOrder);
+            tx.input(OrderContract.CONTRACT_ID, secondOrder);
+            tx.input(TokenContract.ID, new TokenState(issuer.getParty(), buyer.getParty(), 9));
+            tx.output(OrderContract.CONTRACT_ID, delivered(firstOrder));
+            tx.output(TokenContract.ID, new TokenState(issuer.getParty(), seller.getParty(), 9));
+            tx.command(ImmutableList.of(issuer.getPublicKey(), buyer.getPublicKey(), seller.getPublicKey()),
+                    new TokenContract.Pay());
+            tx.command(ImmutableList.of(buyer.getPublicKey(), seller.getPublicKey()),
+                    new OrderContract.Commands.OrderDeliveredCommand());
+            tx.failsWith("Every input OrderState must be delivered");
+            return null;
+        });
+    }
+}
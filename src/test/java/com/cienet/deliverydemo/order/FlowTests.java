@@ -1,11 +1,17 @@
 package com.cienet.deliverydemo.order;
 
+import com.cienet.deliverydemo.oracle.Oracle;
+import com.cienet.deliverydemo.token.IssuanceOracleMode;
 import com.cienet.deliverydemo.token.TokenContract;
+import com.cienet.deliverydemo.token.TokenIssueFlow;
 import com.cienet.deliverydemo.token.TokenState;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import kotlin.Pair;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.*;
 import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
 import net.corda.core.node.services.Vault;
 import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
@@ -16,10 +22,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class FlowTests {
     private MockNetwork network;
@@ -35,11 +46,250 @@ public class FlowTests {
         nodeC = network.createPartyNode(null);
         //ImmutableList.of(nodeA, nodeB).forEach(node -> node.registerInitiatedFlow(TokenIssueFlow.class));
         network.runNetwork();
+        // No Oracle node on this network. Deliveries take the default path, without the delivery Oracle.
+        System.setProperty(IssuanceOracleMode.PROPERTY, IssuanceOracleMode.SKIP.name());
     }
 
     @After
     public void tearDown() {
         network.stopNodes();
+        System.clearProperty(IssuanceOracleMode.PROPERTY);
+    }
+
+    @Test
+    public void bulkPlacedOrdersAreBulkDelivered() throws Exception {
+        Party partyA = nodeA.getInfo().getLegalIdentities().get(0);
+        Party partyB = nodeB.getInfo().getLegalIdentities().get(0);
+        Party partyC = nodeC.getInfo().getLegalIdentities().get(0);
+
+        //PartyA issues 1000 to PartyB
+        CordaFuture<List<SignedTransaction>> issued = nodeA.startFlow(
+                new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(partyB, 1000L))));
+        network.runNetwork();
+        issued.get();
+
+        //PartyB places three orders, two with PartyC and one with PartyA, in one transaction
+        CordaFuture<SignedTransaction> placed = nodeB.startFlow(new OrderPlaceFlow.BulkRequest(ImmutableList.of(
+                new OrderPlaceFlow.Item(partyC, "cart_1", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "cart_2", new BigDecimal("2.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyA, "cart_3", new BigDecimal("0.50"), new BigDecimal("0.1")))));
+        network.runNetwork();
+        SignedTransaction placeTx = placed.get();
+        assertEquals(3, placeTx.getTx().outputsOfType(OrderState.class).size());
+        // One payment per seller and the change.
+        assertEquals(3, placeTx.getTx().outputsOfType(TokenState.class).size());
+
+        //PartyC settles both of its orders, one per transaction
+        CordaFuture<List<SignedTransaction>> delivered = nodeC.startFlow(
+                new OrderDeliveredFlow.BulkRequest(ImmutableList.of("cart_1", "cart_2"), 1));
+        network.runNetwork();
+        assertEquals(2, delivered.get().size());
+
+        nodeC.transaction(() -> {
+            List<StateAndRef<OrderState>> orders =
+                    nodeC.getServices().getVaultService().queryBy(OrderState.class).getStates();
+            assertEquals(2, orders.size());
+            orders.forEach(order -> assertEquals(OrderContract.DELIVERED, order.getState().getData().getState()));
+
+            long balance = nodeC.getServices().getVaultService().queryBy(TokenState.class).getStates().stream()
+                    .filter(token -> token.getState().getData().getOwner().equals(partyC))
+                    .mapToLong(token -> token.getState().getData().getAmount())
+                    .sum();
+            // Down payments of 10 and 20, balance payments of 90 and 180.
+            assertEquals(300, balance);
+            return null;
+        });
+    }
+
+    @Test
+    public void bulkDeliveryBatchesEachBuyersOrdersAndSettlesTheLatestOfADuplicateId() throws Exception {
+        Party partyA = nodeA.getInfo().getLegalIdentities().get(0);
+        Party partyB = nodeB.getInfo().getLegalIdentities().get(0);
+        Party partyC = nodeC.getInfo().getLegalIdentities().get(0);
+
+        CordaFuture<List<SignedTransaction>> issuedToB = nodeA.startFlow(
+                new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(partyB, 1000L))));
+        CordaFuture<List<SignedTransaction>> issuedToA = nodeB.startFlow(
+                new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(partyA, 1000L))));
+        network.runNetwork();
+        issuedToB.get();
+        issuedToA.get();
+
+        //PartyB and then PartyA place their orders with PartyC, both with an order "bulk_1"
+        CordaFuture<SignedTransaction> placedByB = nodeB.startFlow(new OrderPlaceFlow.BulkRequest(ImmutableList.of(
+                new OrderPlaceFlow.Item(partyC, "bulk_1", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "bulk_2", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "bulk_3", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "bulk_4", new BigDecimal("1.00"), new BigDecimal("0.1")))));
+        network.runNetwork();
+        placedByB.get();
+        CordaFuture<SignedTransaction> placedByA = nodeA.startFlow(new OrderPlaceFlow.BulkRequest(ImmutableList.of(
+                new OrderPlaceFlow.Item(partyC, "bulk_5", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "bulk_6", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "bulk_7", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "bulk_1", new BigDecimal("1.00"), new BigDecimal("0.1")))));
+        network.runNetwork();
+        placedByA.get();
+
+        //Each buyer has more orders than fit in a transaction
+        CordaFuture<List<SignedTransaction>> delivered = nodeC.startFlow(new OrderDeliveredFlow.BulkRequest(
+                ImmutableList.of("bulk_1", "bulk_2", "bulk_3", "bulk_4", "bulk_5", "bulk_6", "bulk_7"), 2));
+        network.runNetwork();
+        List<SignedTransaction> deliverTxs = delivered.get();
+        assertEquals(4, deliverTxs.size());
+        deliverTxs.forEach(tx -> assertTrue(tx.getTx().outputsOfType(OrderState.class).size() <= 2));
+
+        nodeC.transaction(() -> {
+            List<StateAndRef<OrderState>> orders =
+                    nodeC.getServices().getVaultService().queryBy(OrderState.class).getStates();
+            assertEquals(8, orders.size());
+            orders.forEach(order -> {
+                OrderState orderState = order.getState().getData();
+                // PartyA's "bulk_1" is the latest of the two, PartyB's is left shipping.
+                boolean left = orderState.getLinearId().getExternalId().equals("bulk_1")
+                        && orderState.getBuyer().equals(partyB);
+                assertEquals(left ? OrderContract.SHIPPING : OrderContract.DELIVERED, orderState.getState());
+            });
+
+            long balance = nodeC.getServices().getVaultService().queryBy(TokenState.class).getStates().stream()
+                    .filter(token -> token.getState().getData().getOwner().equals(partyC))
+                    .mapToLong(token -> token.getState().getData().getAmount())
+                    .sum();
+            // Down payments of 10 for all eight orders, balance payments of 90 for the seven delivered.
+            assertEquals(710, balance);
+            return null;
+        });
+    }
+
+    @Test
+    public void concurrentPaymentsFromOneBuyerSpendDisjointStates() throws Exception {
+        Party partyB = nodeB.getInfo().getLegalIdentities().get(0);
+        Party partyC = nodeC.getInfo().getLegalIdentities().get(0);
+        Party notary = network.getDefaultNotaryIdentity();
+
+        //Two states, each covering either deposit
+        CordaFuture<List<SignedTransaction>> issued = nodeA.startFlow(new TokenIssueFlow.BatchRequest(ImmutableList.of(
+                new Pair<>(partyB, 100L), new Pair<>(partyB, 100L))));
+        network.runNetwork();
+        issued.get();
+
+        //Both placements select their tokens before either transaction is recorded
+        CordaFuture<SignedTransaction> first = nodeB.startFlow(new OrderPlaceFlow.Request(
+                partyC, "race_1", new BigDecimal("1.00"), new BigDecimal("0.1")));
+        CordaFuture<SignedTransaction> second = nodeB.startFlow(new OrderPlaceFlow.Request(
+                partyC, "race_2", new BigDecimal("1.00"), new BigDecimal("0.1")));
+        network.runNetwork();
+        SignedTransaction firstTx = first.get();
+        SignedTransaction secondTx = second.get();
+
+        assertEquals(1, firstTx.getTx().getInputs().size());
+        assertEquals(1, secondTx.getTx().getInputs().size());
+        assertNotEquals(firstTx.getTx().getInputs().get(0), secondTx.getTx().getInputs().get(0));
+        assertTrue(firstTx.getSigs().stream().anyMatch(sig -> sig.getBy().equals(notary.getOwningKey())));
+        assertTrue(secondTx.getSigs().stream().anyMatch(sig -> sig.getBy().equals(notary.getOwningKey())));
+    }
+
+    @Test
+    public void byDefaultADeliveryIsSettledWithoutTheDeliveryOracle() throws Exception {
+        Party partyB = nodeB.getInfo().getLegalIdentities().get(0);
+        Party partyC = nodeC.getInfo().getLegalIdentities().get(0);
+        assertNull(System.getProperty(OrderDeliveredFlow.ORACLE_MODE));
+
+        CordaFuture<List<SignedTransaction>> issued = nodeA.startFlow(
+                new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(partyB, 1000L))));
+        network.runNetwork();
+        issued.get();
+        CordaFuture<SignedTransaction> placed = nodeB.startFlow(new OrderPlaceFlow.Request(
+                partyC, "default_1", new BigDecimal("1.00"), new BigDecimal("0.1")));
+        network.runNetwork();
+        placed.get();
+
+        CordaFuture<SignedTransaction> delivered = nodeC.startFlow(new OrderDeliveredFlow.Request("default_1"));
+        network.runNetwork();
+        SignedTransaction deliverTx = delivered.get();
+        assertEquals(OrderContract.DELIVERED,
+                deliverTx.getTx().outputsOfType(OrderState.class).get(0).getState());
+        assertTrue(deliverTx.getTx().getCommands().stream()
+                .noneMatch(command -> command.getValue() instanceof Oracle.DeliveryOracle.Delivered));
+    }
+
+    @Test
+    public void orderBookFollowsOrdersFromPlacementToDelivery() throws Exception {
+        Party partyB = nodeB.getInfo().getLegalIdentities().get(0);
+        Party partyC = nodeC.getInfo().getLegalIdentities().get(0);
+
+        CordaFuture<List<SignedTransaction>> issued = nodeA.startFlow(
+                new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(partyB, 1000L))));
+        network.runNetwork();
+        issued.get();
+
+        CordaFuture<SignedTransaction> placed = nodeB.startFlow(new OrderPlaceFlow.Request(
+                partyC, "book_1", new BigDecimal("1.00"), new BigDecimal("0.1")));
+        network.runNetwork();
+        placed.get();
+
+        OrderBook sellerBook = nodeC.getServices().cordaService(OrderBook.class);
+        OrderBook buyerBook = nodeB.getServices().cordaService(OrderBook.class);
+        nodeC.transaction(() -> {
+            assertEquals(OrderContract.SHIPPING, sellerBook.find("book_1").getState().getData().getState());
+            assertNull(sellerBook.find("no_such_order"));
+            assertEquals(ImmutableList.of("book_1"),
+                    ImmutableList.copyOf(sellerBook.findAll(ImmutableList.of("book_1", "no_such_order")).keySet()));
+            return null;
+        });
+        nodeB.transaction(() -> {
+            // Only the seller's book holds an order.
+            assertNull(buyerBook.find("book_1"));
+            return null;
+        });
+
+        CordaFuture<SignedTransaction> delivered = nodeC.startFlow(new OrderDeliveredFlow.Request("book_1"));
+        network.runNetwork();
+        SignedTransaction deliverTx = delivered.get();
+
+        nodeC.transaction(() -> {
+            StateAndRef<OrderState> order = sellerBook.find("book_1");
+            assertEquals(OrderContract.DELIVERED, order.getState().getData().getState());
+            assertEquals(deliverTx.getId(), order.getRef().getTxhash());
+            return null;
+        });
+    }
+
+    @Test
+    public void orderQueriesPageAndCountInTheVault() throws Exception {
+        Party partyB = nodeB.getInfo().getLegalIdentities().get(0);
+        Party partyC = nodeC.getInfo().getLegalIdentities().get(0);
+
+        CordaFuture<List<SignedTransaction>> issued = nodeA.startFlow(
+                new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(partyB, 1000L))));
+        network.runNetwork();
+        issued.get();
+
+        CordaFuture<SignedTransaction> placed = nodeB.startFlow(new OrderPlaceFlow.BulkRequest(ImmutableList.of(
+                new OrderPlaceFlow.Item(partyC, "query_3", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "query_1", new BigDecimal("1.00"), new BigDecimal("0.1")),
+                new OrderPlaceFlow.Item(partyC, "query_2", new BigDecimal("1.00"), new BigDecimal("0.1")))));
+        network.runNetwork();
+        placed.get();
+
+        CordaFuture<List<SignedTransaction>> delivered = nodeC.startFlow(
+                new OrderDeliveredFlow.BulkRequest(ImmutableList.of("query_2")));
+        network.runNetwork();
+        delivered.get();
+
+        CordaFuture<StateAndRef<OrderState>> order = nodeB.startFlow(new OrderQueryFlow.Get("query_2"));
+        CordaFuture<Vault.Page<OrderState>> firstPage = nodeC.startFlow(
+                new OrderQueryFlow.ListByStatus(OrderContract.SHIPPING, 1, 1));
+        CordaFuture<Vault.Page<OrderState>> secondPage = nodeC.startFlow(
+                new OrderQueryFlow.ListByStatus(OrderContract.SHIPPING, 2, 1));
+        CordaFuture<Map<String, Long>> counts = nodeC.startFlow(new OrderQueryFlow.CountByStatus());
+        network.runNetwork();
+
+        assertEquals(OrderContract.DELIVERED, order.get().getState().getData().getState());
+        assertEquals(2, firstPage.get().getTotalStatesAvailable());
+        assertEquals("query_1", firstPage.get().getStates().get(0).getState().getData().getLinearId().getExternalId());
+        assertEquals("query_3", secondPage.get().getStates().get(0).getState().getData().getLinearId().getExternalId());
+        assertEquals(ImmutableMap.of(OrderContract.SHIPPING, 2L, OrderContract.DELIVERED, 1L), counts.get());
     }
 
 //    @Test
@@ -147,7 +397,7 @@ public class FlowTests {
                 nodeB.getInfo().getLegalIdentities().get(0),
                 nodeC.getInfo().getLegalIdentities().get(0),
                 new UniqueIdentifier("ut_order", UUID.randomUUID()),
-                10, 0.1f,
+                10, 1000,
                 "shipping");
         TransactionBuilder transactionBuilder4Order = new TransactionBuilder(network.getDefaultNotaryIdentity());
         transactionBuilder4Order.addInputState(inputTokenStateRef);
@@ -1,5 +1,6 @@
 package com.cienet.deliverydemo.token;
 
+import com.google.common.collect.ImmutableList;
 import net.corda.core.contracts.Contract;
 import net.corda.core.identity.CordaX500Name;
 import net.corda.testing.contracts.DummyState;
@@ -42,13 +43,13 @@ public class ContractTests {
     }
 
     @Test
-    public void tokenContractRequiresOneOutputInTheTransaction() {
+    public void tokenContractAllowsManyOutputsInTheTransaction() {
         transaction(ledgerServices, tx -> {
-            // Has two outputs, will fail.
+            // Has two outputs, will verify.
             tx.output(TokenContract.ID, tokenState);
             tx.output(TokenContract.ID, tokenState);
             tx.command(alice.getPublicKey(), new TokenContract.Issue());
-            tx.fails();
+            tx.verifies();
             return null;
         });
 
@@ -61,6 +62,39 @@ public class ContractTests {
         });
     }
 
+    @Test
+    public void tokenContractRequiresEveryIssuedOutputToBeValid() {
+        TokenState negativeTokenState = new TokenState(alice.getParty(), bob.getParty(), -1);
+        TokenState tokenStateWhereBobIsIssuer = new TokenState(bob.getParty(), alice.getParty(), 1);
+
+        transaction(ledgerServices, tx -> {
+            // Second output has a negative amount, will fail.
+            tx.output(TokenContract.ID, tokenState);
+            tx.output(TokenContract.ID, negativeTokenState);
+            tx.command(alice.getPublicKey(), new TokenContract.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Second output's issuer is not a required signer, will fail.
+            tx.output(TokenContract.ID, tokenState);
+            tx.output(TokenContract.ID, tokenStateWhereBobIsIssuer);
+            tx.command(alice.getPublicKey(), new TokenContract.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Second output has the wrong type, will fail.
+            tx.output(TokenContract.ID, tokenState);
+            tx.output(TokenContract.ID, new DummyState());
+            tx.command(alice.getPublicKey(), new TokenContract.Issue());
+            tx.fails();
+            return null;
+        });
+    }
+
     @Test
     public void tokenContractRequiresOneCommandInTheTransaction() {
         transaction(ledgerServices, tx -> {
@@ -194,4 +228,94 @@ public class ContractTests {
             return null;
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void tokenContractPayAcceptsManyInputsFromTheSameIssuer() {
+        TestIdentity charlie = new TestIdentity(new CordaX500Name("Charlie", "", "GB"));
+
+        transaction(ledgerServices, tx -> {
+            // Three inputs are spent into a payment and a change, will verify.
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 3));
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 4));
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 5));
+            tx.output(TokenContract.ID, new TokenState(alice.getParty(), charlie.getParty(), 10));
+            tx.output(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 2));
+            tx.command(ImmutableList.of(alice.getPublicKey(), bob.getPublicKey()), new TokenContract.Pay());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Outputs do not add up to the inputs, will fail.
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 3));
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 4));
+            tx.output(TokenContract.ID, new TokenState(alice.getParty(), charlie.getParty(), 8));
+            tx.command(ImmutableList.of(alice.getPublicKey(), bob.getPublicKey()), new TokenContract.Pay());
+            tx.fails();
+            return null;
+        });
+    }
+
+    @Test
+    public void tokenContractPayConservesAmountPerIssuer() {
+        TestIdentity charlie = new TestIdentity(new CordaX500Name("Charlie", "", "GB"));
+
+        transaction(ledgerServices, tx -> {
+            // Total is conserved, but Alice's tokens turn into Charlie's, will fail.
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 5));
+            tx.input(TokenContract.ID, new TokenState(charlie.getParty(), bob.getParty(), 5));
+            tx.output(TokenContract.ID, new TokenState(charlie.getParty(), alice.getParty(), 10));
+            tx.command(
+                    ImmutableList.of(alice.getPublicKey(), bob.getPublicKey(), charlie.getPublicKey()),
+                    new TokenContract.Pay());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Each issuer's tokens are conserved, will verify.
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 5));
+            tx.input(TokenContract.ID, new TokenState(charlie.getParty(), bob.getParty(), 5));
+            tx.output(TokenContract.ID, new TokenState(alice.getParty(), charlie.getParty(), 5));
+            tx.output(TokenContract.ID, new TokenState(charlie.getParty(), alice.getParty(), 5));
+            tx.command(
+                    ImmutableList.of(alice.getPublicKey(), bob.getPublicKey(), charlie.getPublicKey()),
+                    new TokenContract.Pay());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void tokenContractUniteMergesStatesOfOneOwner() {
+        transaction(ledgerServices, tx -> {
+            // Bob's states merged into one, will verify.
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 3));
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 4));
+            tx.output(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 7));
+            tx.command(bob.getPublicKey(), new TokenContract.Unite());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Owner changes while uniting, will fail.
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 3));
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 4));
+            tx.output(TokenContract.ID, new TokenState(alice.getParty(), alice.getParty(), 7));
+            tx.command(ImmutableList.of(alice.getPublicKey(), bob.getPublicKey()), new TokenContract.Unite());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Owner is not a required signer, will fail.
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 3));
+            tx.input(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 4));
+            tx.output(TokenContract.ID, new TokenState(alice.getParty(), bob.getParty(), 7));
+            tx.command(alice.getPublicKey(), new TokenContract.Unite());
+            tx.fails();
+            return null;
+        });
+    }
+}
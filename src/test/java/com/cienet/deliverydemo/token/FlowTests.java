@@ -1,9 +1,15 @@
 package com.cienet.deliverydemo.token;
 
+import com.cienet.deliverydemo.oracle.Oracle;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import kotlin.Pair;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.TransactionState;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.testing.node.MockNetwork;
 import net.corda.testing.node.StartedMockNode;
@@ -11,7 +17,14 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class FlowTests {
     private MockNetwork network;
@@ -20,6 +33,8 @@ public class FlowTests {
 
     @Before
     public void setup() {
+        // The mock network has no oracle node, except in the tests that create one.
+        System.setProperty(IssuanceOracleMode.PROPERTY, IssuanceOracleMode.SKIP.name());
         network = new MockNetwork(ImmutableList.of("com.cienet.deliverydemo"));
         nodeA = network.createPartyNode(null);
         nodeB = network.createPartyNode(null);
@@ -29,6 +44,7 @@ public class FlowTests {
     @After
     public void tearDown() {
         network.stopNodes();
+        System.clearProperty(IssuanceOracleMode.PROPERTY);
     }
 
     @Test
@@ -110,4 +126,186 @@ public class FlowTests {
         assertEquals(1, signedTransaction.getTx().getAttachments().size());
         assertEquals(null, signedTransaction.getTx().getTimeWindow());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void batchRequestIssuesEveryOwnerInChunksOfTheMaxBatchSize() throws Exception {
+        Party owner = nodeB.getInfo().getLegalIdentities().get(0);
+        TokenIssueFlow.BatchRequest flow = new TokenIssueFlow.BatchRequest(
+                ImmutableList.of(new Pair<>(owner, 1L), new Pair<>(owner, 2L), new Pair<>(owner, 3L)), 2);
+        CordaFuture<List<SignedTransaction>> future = nodeA.startFlow(flow);
+        network.runNetwork();
+        List<SignedTransaction> signedTransactions = future.get();
+
+        assertEquals(2, signedTransactions.size());
+        assertEquals(2, signedTransactions.get(0).getTx().getOutputStates().size());
+        assertEquals(1, signedTransactions.get(1).getTx().getOutputStates().size());
+        assertEquals(3, signedTransactions.get(1).getTx().outputsOfType(TokenState.class).get(0).getAmount());
+    }
+
+    @Test
+    public void batchRequestOfNothingIssuesNoTransaction() throws Exception {
+        CordaFuture<List<SignedTransaction>> future = nodeA.startFlow(new TokenIssueFlow.BatchRequest(ImmutableList.of()));
+        network.runNetwork();
+
+        assertTrue(future.get().isEmpty());
+    }
+
+    @Test
+    public void vaultScanReadsEveryPageInOrderAndStopsEarly() throws Exception {
+        Party owner = nodeB.getInfo().getLegalIdentities().get(0);
+        CordaFuture<List<SignedTransaction>> future = nodeA.startFlow(new TokenIssueFlow.BatchRequest(ImmutableList.of(
+                new Pair<>(owner, 3L), new Pair<>(owner, 1L), new Pair<>(owner, 5L), new Pair<>(owner, 2L), new Pair<>(owner, 4L))));
+        network.runNetwork();
+        future.get();
+
+        nodeB.transaction(() -> {
+            List<Long> amounts = new ArrayList<>();
+            VaultScan.scan(nodeB.getServices(), TokenState.class, TokenQueries.ownedBy(owner), TokenQueries.BY_AMOUNT, 2)
+                    .forEach(state -> amounts.add(state.getState().getData().getAmount()));
+            assertEquals(ImmutableList.of(1L, 2L, 3L, 4L, 5L), amounts);
+
+            List<Long> visited = new ArrayList<>();
+            boolean stopped = VaultScan.scanWhile(nodeB.getServices(), TokenState.class, TokenQueries.ownedBy(owner),
+                    TokenQueries.BY_AMOUNT, 2, state -> {
+                        visited.add(state.getState().getData().getAmount());
+                        return state.getState().getData().getAmount() < 3;
+                    });
+            assertTrue(stopped);
+            assertEquals(ImmutableList.of(1L, 2L, 3L), visited);
+            return null;
+        });
+    }
+
+    @Test
+    public void tokenBalanceIndexFollowsTheVaultAndPicksCoveringStates() throws Exception {
+        Party issuer = nodeA.getInfo().getLegalIdentities().get(0);
+        Party owner = nodeB.getInfo().getLegalIdentities().get(0);
+        CordaFuture<List<SignedTransaction>> future = nodeA.startFlow(new TokenIssueFlow.BatchRequest(ImmutableList.of(
+                new Pair<>(owner, 3L), new Pair<>(owner, 1L))));
+        network.runNetwork();
+        future.get();
+
+        TokenBalanceIndex index = nodeB.getServices().cordaService(TokenBalanceIndex.class);
+        nodeB.transaction(() -> {
+            assertEquals(ImmutableList.of(3L, 1L), amounts(index.pick(owner, 4)));
+            return null;
+        });
+
+        // Issued after the index was filled, so it is only seen through the vault updates.
+        future = nodeA.startFlow(new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(owner, 5L))));
+        network.runNetwork();
+        future.get();
+
+        nodeB.transaction(() -> {
+            assertEquals(ImmutableList.of(5L), amounts(index.pick(owner, 4)));
+            assertEquals(ImmutableList.of(5L, 3L), amounts(index.pick(owner, 8)));
+            assertEquals(ImmutableList.of(5L, 3L, 1L), amounts(index.pick(owner, 9)));
+            assertTrue(index.pick(owner, 10).isEmpty());
+            return null;
+        });
+
+        // The issuer's vault holds the states too, but its index only keeps what the issuer owns.
+        TokenBalanceIndex issuerIndex = nodeA.getServices().cordaService(TokenBalanceIndex.class);
+        nodeA.transaction(() -> {
+            assertTrue(issuerIndex.pick(owner, 1).isEmpty());
+            assertTrue(issuerIndex.pick(issuer, 1).isEmpty());
+            return null;
+        });
+
+        // A smaller covering state of another issuer is picked, whichever issuer is looked at first.
+        StartedMockNode otherIssuerNode = network.createPartyNode(null);
+        network.runNetwork();
+        future = otherIssuerNode.startFlow(new TokenIssueFlow.BatchRequest(ImmutableList.of(new Pair<>(owner, 4L))));
+        network.runNetwork();
+        future.get();
+
+        nodeB.transaction(() -> {
+            assertEquals(ImmutableList.of(4L), amounts(index.pick(owner, 4)));
+            assertEquals(ImmutableList.of(5L), amounts(index.pick(owner, 5)));
+            return null;
+        });
+    }
+
+    @Test
+    public void consolidateFlowUnitesTheSmallestStatesInBoundedBatches() throws Exception {
+        Party owner = nodeB.getInfo().getLegalIdentities().get(0);
+        List<Pair<Party, Long>> issuances = new ArrayList<>();
+        for (long amount = 1; amount <= 7; amount++) {
+            issuances.add(new Pair<>(owner, amount));
+        }
+        CordaFuture<List<SignedTransaction>> future = nodeA.startFlow(new TokenIssueFlow.BatchRequest(issuances));
+        network.runNetwork();
+        future.get();
+
+        // Seven states are over the threshold of five, the six smallest are united three at a time.
+        CordaFuture<List<SignedTransaction>> united = nodeB.startFlow(new TokenConsolidateFlow.Request(5, 3, 2));
+        network.runNetwork();
+        assertEquals(2, united.get().size());
+
+        nodeB.transaction(() -> {
+            List<Long> amounts = new ArrayList<>();
+            VaultScan.scan(nodeB.getServices(), TokenState.class, TokenQueries.ownedBy(owner), TokenQueries.BY_AMOUNT, 10)
+                    .forEach(state -> amounts.add(state.getState().getData().getAmount()));
+            // 1 + 2 + 3 and 4 + 5 + 6, the largest is left alone.
+            assertEquals(ImmutableList.of(6L, 7L, 15L), amounts);
+            return null;
+        });
+
+        // Three states are under the threshold, there is nothing to unite.
+        united = nodeB.startFlow(new TokenConsolidateFlow.Request(5, 3, 2));
+        network.runNetwork();
+        assertTrue(united.get().isEmpty());
+    }
+
+    @Test
+    public void balanceFlowsSumInTheVault() throws Exception {
+        Party issuer = nodeA.getInfo().getLegalIdentities().get(0);
+        Party owner = nodeB.getInfo().getLegalIdentities().get(0);
+        CordaFuture<List<SignedTransaction>> future = nodeA.startFlow(new TokenIssueFlow.BatchRequest(ImmutableList.of(
+                new Pair<>(owner, 3L), new Pair<>(owner, 1L), new Pair<>(owner, 5L))));
+        network.runNetwork();
+        future.get();
+
+        CordaFuture<Long> balance = nodeB.startFlow(new TokenBalanceFlow.Request(owner, issuer));
+        CordaFuture<Long> none = nodeB.startFlow(new TokenBalanceFlow.Request(issuer, issuer));
+        CordaFuture<Map<CordaX500Name, Long>> byIssuer = nodeB.startFlow(new TokenBalanceFlow.ByIssuer(owner));
+        network.runNetwork();
+
+        assertEquals(9L, (long) balance.get());
+        assertEquals(0L, (long) none.get());
+        assertEquals(ImmutableMap.of(issuer.getName(), 9L), byIssuer.get());
+    }
+
+    @Test
+    public void cachedOracleModeSkipsTheQueryButStillHasTheOracleSignEveryIssuance() throws Exception {
+        System.setProperty(IssuanceOracleMode.PROPERTY, IssuanceOracleMode.CACHED.name());
+        StartedMockNode oracleNode = network.createPartyNode(new CordaX500Name("Oracle", "Lagos", "NG"));
+        Party oracle = oracleNode.getInfo().getLegalIdentities().get(0);
+        network.runNetwork();
+        Oracle.PuzzleOracle puzzleOracle = oracleNode.getServices().cordaService(Oracle.PuzzleOracle.class);
+        IssuanceAttestationCache attestations = nodeA.getServices().cordaService(IssuanceAttestationCache.class);
+        assertNull(attestations.get(oracle, TokenIssueFlow.ORACLE_QUERY));
+
+        // The Oracle looks its answer up once to answer the query and once to sign, the second
+        // issuance reuses the cached answer, so only the signing is left.
+        long[] lookups = {2, 1};
+        for (long expectedLookups : lookups) {
+            long lookupsBefore = puzzleOracle.cacheStats().requestCount();
+            TokenIssueFlow.Request flow = new TokenIssueFlow.Request(nodeB.getInfo().getLegalIdentities().get(0), 99);
+            CordaFuture<SignedTransaction> future = nodeA.startFlow(flow);
+            network.runNetwork();
+            SignedTransaction signedTransaction = future.get();
+
+            assertEquals(2, signedTransaction.getTx().getCommands().size());
+            assertTrue(signedTransaction.getSigs().stream().anyMatch(sig -> sig.getBy().equals(oracle.getOwningKey())));
+            assertEquals(expectedLookups, puzzleOracle.cacheStats().requestCount() - lookupsBefore);
+            assertNotNull(attestations.get(oracle, TokenIssueFlow.ORACLE_QUERY));
+        }
+    }
+
+    private static List<Long> amounts(List<StateAndRef<TokenState>> states) {
+        List<Long> amounts = new ArrayList<>();
+        states.forEach(state -> amounts.add(state.getState().getData().getAmount()));
+        return amounts;
+    }
+}
@@ -5,6 +5,9 @@ import net.corda.core.identity.CordaX500Name;
 import net.corda.core.identity.Party;
 import net.corda.testing.core.TestIdentity;
 import org.junit.Test;
+
+import java.math.BigDecimal;
+
 import static org.junit.Assert.assertEquals;
 
 public class StateTests {
@@ -36,4 +39,34 @@ public class StateTests {
         assert(tokenState.getParticipants().contains(alice));
         assert(tokenState.getParticipants().contains(bob));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void tokenStateMapsIssuerOwnerAndAmountToTokenSchemaV1() {
+        // Past the range of an int.
+        TokenState tokenState = new TokenState(alice, bob, 10_000_000_000L);
+        TokenSchemaV1.PersistentToken persistentToken =
+                (TokenSchemaV1.PersistentToken) tokenState.generateMappedObject(new TokenSchemaV1());
+        assertEquals(alice.getName().toString(), persistentToken.getIssuer());
+        assertEquals(bob.getName().toString(), persistentToken.getOwner());
+        assertEquals(10_000_000_000L, persistentToken.getAmount());
+    }
+
+    @Test
+    public void moneyConvertsDecimalsExactly() {
+        assertEquals(1290, Money.minorUnits(new BigDecimal("12.9")));
+        assertEquals(1000, Money.basisPoints(new BigDecimal("0.1")));
+        assertEquals(129, Money.share(1290, 1000));
+        assertEquals(new BigDecimal("12.90"), Money.toDecimal(1290));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void moneyRejectsFractionsOfMinorUnits() {
+        Money.minorUnits(new BigDecimal("12.345"));
+    }
+
+    @Test
+    public void tokenStateAmountDoesNotOverflowAnInt() {
+        TokenState tokenState = new TokenState(alice, bob, Integer.MAX_VALUE + 1L);
+        assertEquals(Integer.MAX_VALUE + 1L, tokenState.getAmount());
+    }
+}